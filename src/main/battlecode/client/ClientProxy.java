@@ -1,6 +1,7 @@
 package battlecode.client;
 
 import java.io.EOFException;
+import java.io.IOException;
 
 public interface ClientProxy extends DebugProxy {
 
@@ -9,4 +10,9 @@ public interface ClientProxy extends DebugProxy {
 	public Object peekObject() throws EOFException;
 
 	public boolean isDebuggingAvailable();
+
+	/**
+	 * Lets go of the stream or connection the objects come from.
+	 */
+	public void close() throws IOException;
 }
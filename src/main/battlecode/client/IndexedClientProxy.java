@@ -0,0 +1,79 @@
+package battlecode.client;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+import battlecode.client.replay.ReplayFile;
+import battlecode.engine.signal.Signal;
+import battlecode.serial.notification.Notification;
+
+/**
+ * Serves a saved match from an indexed match file.
+ *
+ * readObject hands out the file's objects in order, exactly as a
+ * StreamClientProxy would, decoding one block at a time.
+ */
+public final class IndexedClientProxy implements ClientProxy {
+
+	private final ReplayFile file;
+
+	private Object[] records = new Object[0];
+	private int nextRecord = 0;
+	private int nextBlock = 0;
+
+	private Object peekBuffer;
+	private boolean peeked = false;
+
+	public IndexedClientProxy(String path) throws IOException {
+		file = new ReplayFile(path);
+	}
+
+	public synchronized Object readObject() throws EOFException {
+		if (peeked) {
+			peeked = false;
+			return peekBuffer;
+		}
+		while (nextRecord == records.length) {
+			if (nextBlock == file.getBlockCount()) {
+				throw new EOFException();
+			}
+			try {
+				records = file.readBlock(nextBlock++);
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+				throw new RuntimeException("Deserialization failed");
+			}
+			nextRecord = 0;
+		}
+		return records[nextRecord++];
+	}
+
+	public synchronized Object peekObject() throws EOFException {
+		if (!peeked) {
+			peekBuffer = readObject();
+			peeked = true;
+		}
+		return peekBuffer;
+	}
+
+	public boolean isDebuggingAvailable() {
+		return false;
+	}
+
+	public void writeNotification(Notification n) {
+		assert isDebuggingAvailable();
+	}
+
+	public void writeSignal(Signal s) {
+		assert isDebuggingAvailable();
+	}
+
+	public void close() throws IOException {
+		file.close();
+	}
+
+	protected void finalize() throws Throwable {
+		close();
+	}
+}
@@ -2,7 +2,8 @@ package battlecode.client;
 
 import java.io.*;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import battlecode.serial.*;
 import battlecode.serial.notification.Notification;
@@ -13,7 +14,10 @@ public class LocalProxy extends Proxy implements ClientProxy {
 
 	public static final LocalProxy INSTANCE = new LocalProxy(); 
 	
-	private final Queue<Object> queue;
+	private final BlockingQueue<Object> queue;
+
+	// filled by peekObject, handed out by the next readObject
+	private Object peekBuffer = null;
 	
 	private final Notifier notifier;
 	
@@ -27,7 +31,7 @@ public class LocalProxy extends Proxy implements ClientProxy {
 	
 	// Can't instantiate.
 	private LocalProxy() {
-		queue = new ConcurrentLinkedQueue<Object>();
+		queue = new LinkedBlockingQueue<Object>();
 		notifier = new Notifier();
 	}
 
@@ -41,26 +45,33 @@ public class LocalProxy extends Proxy implements ClientProxy {
 
 	public Object readObject() throws EOFException {
 		synchronized (queue) {
-			while (queue.isEmpty())
-				try {
-					Thread.sleep(250);
-				} catch (InterruptedException e) {
-				}
-			return queue.poll();
+			if (peekBuffer != null) {
+				Object o = peekBuffer;
+				peekBuffer = null;
+				return o;
+			}
+			return take();
 		}
 	}
 
 	public Object peekObject() throws EOFException {
 		assert false: "Local match shouldn't have best-of-3 early termination";
 		synchronized (queue) {
-			while (queue.isEmpty()) {
-				try {
-					Thread.sleep(250);
-				}
-				catch (InterruptedException e) {
-				}
+			if (peekBuffer == null) {
+				peekBuffer = take();
+			}
+			return peekBuffer;
+		}
+	}
+
+	// blocks until the server hands over the next object
+	private Object take() {
+		while (true) {
+			try {
+				return queue.take();
+			}
+			catch (InterruptedException e) {
 			}
-			return queue.peek();
 		}
 	}
 
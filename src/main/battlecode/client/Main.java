@@ -8,8 +8,7 @@ import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.io.File;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 
 import javax.swing.JFrame;
@@ -18,6 +17,7 @@ import javax.swing.SwingUtilities;
 import battlecode.analysis.AwesomenessAnalyzer;
 import battlecode.client.ClientProxy;
 import battlecode.client.StreamClientProxy;
+import battlecode.client.replay.ReplayFile;
 import battlecode.client.viewer.MatchViewer;
 import battlecode.client.MatchDialog.Choice;
 import battlecode.client.MatchDialog.Parameter;
@@ -88,6 +88,35 @@ public class Main {
         });
     }
 
+    // files smaller than this are loaded on the match reader thread
+    private static final long PIPELINE_MIN_BYTES = 4 << 20;
+
+    /**
+     * Opens a saved match, either an indexed match file or a gzipped .rms
+     * stream.  Unless bc.client.loader-threads is 0, a file of at least
+     * PIPELINE_MIN_BYTES is loaded by a PipelinedClientProxy with that many
+     * inflater threads (by default one per processor).
+     */
+    public static ClientProxy openMatchFile(String path) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String configured = Config.getGlobalConfig().get("bc.client.loader-threads");
+        if (configured != null) {
+            try {
+                threads = Integer.parseInt(configured.trim());
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring bad value for bc.client.loader-threads: " + configured);
+            }
+        }
+        // small files load in a moment anyway, so don't start threads for them
+        if (threads > 0 && new File(path).length() >= PIPELINE_MIN_BYTES) {
+            return PipelinedClientProxy.open(path, threads);
+        }
+        if (ReplayFile.isReplayFile(path)) {
+            return new IndexedClientProxy(path);
+        }
+        return new StreamClientProxy(path);
+    }
+
     private static void runLocal(Config options) {
         MatchDialog md = new MatchDialog(null);
         if (!options.getBoolean("bc.dialog.skip"))
@@ -116,7 +145,7 @@ public class Main {
                         }
                     }
 
-                    theProxy = new StreamClientProxy(filePath);
+                    theProxy = openMatchFile(filePath);
                 } catch (IOException e) {
                     e.printStackTrace();
                     return;
@@ -145,23 +174,27 @@ public class Main {
 
             case REMOTE:
                 try {
-                    Socket socket = new Socket(md.getSource(), 6370);
+                    int prefetchKB = 4096;
+                    if (options.get("bc.client.prefetch-kb") != null) {
+                        try {
+                            prefetchKB = Integer.parseInt(options.get("bc.client.prefetch-kb").trim());
+                        } catch (NumberFormatException e) {
+                            System.err.println("Ignoring bad value for bc.client.prefetch-kb: "
+                                               + options.get("bc.client.prefetch-kb"));
+                        }
+                    }
+                    SocketTransport transport = SocketTransport.connect(
+                            new InetSocketAddress(md.getSource(), 6370), prefetchKB << 10);
 
-                    ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
                     String teamA = md.getParameter(Parameter.TEAM_A), teamB = md.getParameter(Parameter.TEAM_B);
                     String[] maps = md.getAllMaps().toArray(new String[0]);
-                    out.writeObject(new MatchInfo(teamA, teamB, maps));
-                    out.flush();
-
-                    Thread.sleep(1000);
+                    transport.send(new MatchInfo(teamA, teamB, maps));
 
-                    theProxy = new StreamClientProxy(socket.getInputStream(), out);
+                    theProxy = new StreamClientProxy(transport);
                 } catch (UnknownHostException e) {
                     e.printStackTrace();
                 } catch (IOException e) {
                     e.printStackTrace();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
                 }
 
                 break;
@@ -178,11 +211,44 @@ public class Main {
             serverThread.start();
     }
 
+    /**
+     * Watches every match a server multiplexes over one connection to
+     * host[:port], each in a viewer of its own.
+     */
+    private static boolean runMultiplexed(String source) {
+        int port = 6370;
+        int colon = source.lastIndexOf(':');
+        if (colon >= 0) {
+            try {
+                port = Integer.parseInt(source.substring(colon + 1));
+            } catch (NumberFormatException e) {
+                System.err.println("Bad port in bc.client.multiplex: " + source);
+                return false;
+            }
+            source = source.substring(0, colon);
+        }
+        try {
+            MultiplexTransport.connect(new InetSocketAddress(source, port), 4 << 20,
+                new MultiplexTransport.Listener() {
+                    public void streamOpened(int stream, ClientProxy proxy) {
+                        JFrame frame = createFrame();
+                        // closing one match shouldn't close the others
+                        frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+                        Main.showViewer(frame, new MatchViewer(proxy, false));
+                    }
+                });
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        return true;
+    }
+
     public static boolean run(Config options) {
 				if (options.get("bc.client.match") != null && !options.get("bc.client.match").trim().equals("")) {
 						ClientProxy theProxy;
 						try {
-								theProxy = new StreamClientProxy(options.get("bc.client.match"));
+								theProxy = openMatchFile(options.get("bc.client.match"));
 						} catch (IOException e) {
 								e.printStackTrace();
 								return false;
@@ -190,6 +256,9 @@ public class Main {
 						Main.showViewer(createFrame(), new MatchViewer(theProxy, true));
 						return true;
 				}
+        if (options.get("bc.client.multiplex") != null && !options.get("bc.client.multiplex").trim().equals("")) {
+            return runMultiplexed(options.get("bc.client.multiplex").trim());
+        }
         if (options.get("bc.server.mode").equalsIgnoreCase("LOCAL")) {
             runLocal(options);
             return true;
@@ -0,0 +1,323 @@
+package battlecode.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import battlecode.client.util.PrefetchInputStream;
+
+/**
+ * One connection to a match server carrying the streams of many matches.
+ *
+ * Each match is an ordinary client stream, serialized objects in both
+ * directions, cut into frames tagged with a stream id:
+ *
+ * <pre>
+ * frame = stream:int kind:byte length:int payload
+ * </pre>
+ *
+ * The server announces a match with OPEN, and either side ends one with
+ * CLOSE.  The server may only send as many DATA bytes on a stream as the
+ * client has granted it with CREDIT frames, starting with one window when
+ * the stream opens.  Every stream buffers a full window, so the thread that
+ * demultiplexes the connection never waits on a viewer, and a viewer that
+ * falls behind only stops the credit for its own stream.
+ *
+ * A frame that breaks the rules of its stream, by overrunning its window,
+ * opening it twice or having an unknown kind, fails only that stream, which
+ * the client then closes.  Frames for streams that are already closed are
+ * dropped.  Only a frame longer than a window, which means the framing
+ * itself has been lost, ends the connection.
+ */
+public final class MultiplexTransport {
+
+	public static final int OPEN = 0;
+	public static final int DATA = 1;
+	public static final int CREDIT = 2;
+	public static final int CLOSE = 3;
+
+	public interface Listener {
+		/**
+		 * Called on a thread of its own when the server opens a stream.
+		 */
+		void streamOpened(int stream, ClientProxy proxy);
+	}
+
+	private final Socket socket;
+	private final int window;
+	private final Listener listener;
+	private final Map<Integer, PrefetchInputStream> streams = new HashMap<Integer, PrefetchInputStream>();
+	private final LinkedBlockingQueue<byte[]> outbox = new LinkedBlockingQueue<byte[]>();
+
+	private MultiplexTransport(Socket socket, int window, Listener listener) {
+		this.socket = socket;
+		this.window = window;
+		this.listener = listener;
+	}
+
+	/**
+	 * Connects to a match server.
+	 *
+	 * @param window how many bytes of each stream to buffer ahead of its
+	 * viewer
+	 */
+	public static MultiplexTransport connect(InetSocketAddress address, int window, Listener listener) throws IOException {
+		Socket socket = new Socket();
+		socket.connect(address);
+		socket.setTcpNoDelay(true);
+		final MultiplexTransport transport = new MultiplexTransport(socket, window, listener);
+		startDaemon("mux-read", new Runnable() {
+			public void run() {
+				transport.readFrames();
+			}
+		});
+		startDaemon("mux-write", new Runnable() {
+			public void run() {
+				transport.writeFrames();
+			}
+		});
+		return transport;
+	}
+
+	private static void startDaemon(String name, Runnable r) {
+		Thread t = new Thread(r, name);
+		t.setDaemon(true);
+		t.start();
+	}
+
+	public void close() throws IOException {
+		socket.close();
+	}
+
+	private void send(int stream, int kind, byte[] payload, int off, int len) {
+		byte[] frame = new byte[9 + len];
+		ByteBuffer.wrap(frame).putInt(stream).put((byte) kind).putInt(len).put(payload, off, len);
+		outbox.add(frame);
+	}
+
+	private void sendCredit(int stream, int bytes) {
+		byte[] payload = new byte[4];
+		ByteBuffer.wrap(payload).putInt(bytes);
+		send(stream, CREDIT, payload, 0, 4);
+	}
+
+	private void readFrames() {
+		IOException failure = null;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+			byte[] payload = new byte[1 << 12];
+			while (true) {
+				int stream;
+				try {
+					stream = in.readInt();
+				}
+				catch (EOFException e) {
+					break;
+				}
+				int kind = in.readByte();
+				int length = in.readInt();
+				if (length < 0 || length > window) {
+					throw new IOException("Frame of length " + length + " on stream " + stream);
+				}
+				if (length > payload.length) {
+					payload = Arrays.copyOf(payload, Math.max(length, 2 * payload.length));
+				}
+				in.readFully(payload, 0, length);
+				PrefetchInputStream input;
+				synchronized (streams) {
+					input = streams.get(stream);
+				}
+				switch (kind) {
+				case OPEN:
+					if (input != null) {
+						fail(stream, new IOException("Stream " + stream + " opened twice"));
+					}
+					else {
+						open(stream);
+					}
+					break;
+				case DATA:
+					if (input != null
+					    && input.offer(ByteBuffer.wrap(payload, 0, length)) < length) {
+						fail(stream, new IOException("Stream " + stream + " overran its window"));
+					}
+					break;
+				case CLOSE:
+					if (remove(stream) != null) {
+						input.finish(null);
+					}
+					break;
+				default:
+					if (input != null) {
+						fail(stream, new IOException("Frame of unknown kind " + kind + " on stream " + stream));
+					}
+				}
+			}
+		}
+		catch (IOException e) {
+			failure = e;
+		}
+		synchronized (streams) {
+			for (PrefetchInputStream input : streams.values()) {
+				input.finish(failure);
+			}
+			streams.clear();
+		}
+		outbox.add(new byte[0]);
+	}
+
+	private PrefetchInputStream remove(int stream) {
+		synchronized (streams) {
+			return streams.remove(stream);
+		}
+	}
+
+	/**
+	 * Ends one stream with an error and tells the server to stop sending it,
+	 * leaving the others alone.
+	 */
+	private void fail(int stream, IOException e) {
+		PrefetchInputStream input = remove(stream);
+		if (input != null) {
+			input.finish(e);
+			send(stream, CLOSE, new byte[0], 0, 0);
+		}
+	}
+
+	private void writeFrames() {
+		try {
+			OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+			while (true) {
+				byte[] frame = outbox.take();
+				if (frame.length == 0) {
+					break;
+				}
+				out.write(frame);
+				if (outbox.isEmpty()) {
+					out.flush();
+				}
+			}
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+		catch (InterruptedException e) {}
+	}
+
+	private void open(final int stream) {
+		final PrefetchInputStream input = new PrefetchInputStream(window, null);
+		synchronized (streams) {
+			streams.put(stream, input);
+		}
+		sendCredit(stream, window);
+		// the proxy reads the stream header, which has to arrive through
+		// this thread, so it is built elsewhere
+		startDaemon("mux-stream-" + stream, new Runnable() {
+			public void run() {
+				ClientProxy proxy;
+				try {
+					ObjectOutputStream out = new ObjectOutputStream(new FrameOutputStream(stream));
+					proxy = new StreamClientProxy(new CreditInputStream(stream, input), out);
+				}
+				catch (IOException e) {
+					e.printStackTrace();
+					fail(stream, e);
+					return;
+				}
+				listener.streamOpened(stream, proxy);
+			}
+		});
+	}
+
+	/**
+	 * Hands consumed bytes back to the server as credit, a quarter window at
+	 * a time.
+	 */
+	private final class CreditInputStream extends FilterInputStream {
+		private final int stream;
+		private int consumed = 0;
+		private boolean closed = false;
+
+		CreditInputStream(int stream, InputStream in) {
+			super(in);
+			this.stream = stream;
+		}
+
+		private void consumed(int n) {
+			consumed += n;
+			if (consumed >= window / 4) {
+				sendCredit(stream, consumed);
+				consumed = 0;
+			}
+		}
+
+		public int read() throws IOException {
+			int b = in.read();
+			if (b >= 0) {
+				consumed(1);
+			}
+			return b;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = in.read(b, off, len);
+			if (n > 0) {
+				consumed(n);
+			}
+			return n;
+		}
+
+		public long skip(long n) throws IOException {
+			long skipped = in.skip(n);
+			consumed((int) skipped);
+			return skipped;
+		}
+
+		public synchronized void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			// whatever the server still sends on this stream is dropped
+			if (remove(stream) != null) {
+				send(stream, CLOSE, new byte[0], 0, 0);
+			}
+			in.close();
+		}
+	}
+
+	/**
+	 * Sends everything written to it as DATA frames on one stream.
+	 */
+	private final class FrameOutputStream extends OutputStream {
+		private final int stream;
+
+		FrameOutputStream(int stream) {
+			this.stream = stream;
+		}
+
+		public void write(int b) {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		public void write(byte[] b, int off, int len) {
+			if (len > 0) {
+				send(stream, DATA, b, off, len);
+			}
+		}
+	}
+}
@@ -0,0 +1,315 @@
+package battlecode.client;
+
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPInputStream;
+
+import battlecode.client.replay.ReplayFile;
+import battlecode.engine.signal.Signal;
+import battlecode.serial.notification.Notification;
+
+/**
+ * Loads a saved match on background threads, so that decompression and
+ * deserialization overlap with the BufferedMatch that indexes the rounds.
+ *
+ * The stages are connected by bounded queues.  A .rms file has one gunzip
+ * thread feeding raw chunks to one deserializing thread.  An indexed match
+ * file has independently deflated blocks, so a pool of workers inflates
+ * several blocks at once while a single thread decodes them in order.  In
+ * both cases readObject takes decoded objects off the last queue.
+ *
+ * If any stage fails, the pipeline stops: the stages feeding the failed one
+ * are told to give up instead of waiting for room in a queue, and readObject
+ * rethrows the failure once the objects decoded before it have been read.
+ */
+public final class PipelinedClientProxy implements ClientProxy {
+
+	private static final int OBJECT_QUEUE_SIZE = 1024;
+	private static final int CHUNK_QUEUE_SIZE = 64;
+	private static final int CHUNK_SIZE = 1 << 16;
+
+	// ends the object queue
+	private static final Object END = new Object();
+	// ends the chunk queue
+	private static final byte[] NO_MORE_CHUNKS = new byte[0];
+
+	private final BlockingQueue<Object> objects = new ArrayBlockingQueue<Object>(OBJECT_QUEUE_SIZE);
+	private volatile Throwable failure = null;
+	// set when the last stage ends, so that earlier ones stop producing
+	private volatile boolean stopped = false;
+	// set by close, so that the last stage stops too
+	private volatile boolean closed = false;
+	private boolean finished = false;
+
+	private Object peekBuffer;
+	private boolean peeked = false;
+
+	private static final ThreadFactory DAEMONS = new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "match-loader");
+			t.setDaemon(true);
+			return t;
+		}
+	};
+
+	private PipelinedClientProxy() {
+	}
+
+	/**
+	 * Starts loading the match file at the given path.
+	 *
+	 * @param threads how many blocks of an indexed match file to inflate at
+	 * once
+	 */
+	public static PipelinedClientProxy open(String path, int threads) throws IOException {
+		PipelinedClientProxy proxy = new PipelinedClientProxy();
+		if (ReplayFile.isReplayFile(path)) {
+			proxy.startBlockStages(new ReplayFile(path), Math.max(threads, 1));
+		}
+		else {
+			proxy.startStreamStages(new FileInputStream(path));
+		}
+		return proxy;
+	}
+
+	private void startStreamStages(final InputStream file) {
+		final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<byte[]>(CHUNK_QUEUE_SIZE);
+		DAEMONS.newThread(new Runnable() {
+			public void run() {
+				try {
+					InputStream in = new GZIPInputStream(file, CHUNK_SIZE);
+					byte[] buf = new byte[CHUNK_SIZE];
+					int n;
+					while (!stopped && (n = in.read(buf)) > 0) {
+						put(chunks, Arrays.copyOf(buf, n));
+					}
+					in.close();
+				}
+				catch (IOException e) {
+					fail(e);
+				}
+				finally {
+					put(chunks, NO_MORE_CHUNKS);
+				}
+			}
+		}).start();
+		DAEMONS.newThread(new Runnable() {
+			public void run() {
+				try {
+					ClientProxy source = new StreamClientProxy(new ChunkInputStream(chunks));
+					while (!closed) {
+						put(objects, source.readObject());
+					}
+				}
+				catch (EOFException e) {
+					// end of the match file
+				}
+				catch (Exception e) {
+					fail(e);
+				}
+				finally {
+					stop(chunks);
+					put(objects, END);
+				}
+			}
+		}).start();
+	}
+
+	private void startBlockStages(final ReplayFile file, int threads) {
+		final ExecutorService inflaters = Executors.newFixedThreadPool(threads, DAEMONS);
+		// bounds how many inflated blocks can be waiting to be decoded
+		final BlockingQueue<Future<byte[]>> inflated = new ArrayBlockingQueue<Future<byte[]>>(2 * threads);
+		DAEMONS.newThread(new Runnable() {
+			public void run() {
+				try {
+					for (int b = 0; b < file.getBlockCount() && !stopped; b++) {
+						final int block = b;
+						put(inflated, inflaters.submit(new Callable<byte[]>() {
+							public byte[] call() throws IOException {
+								return file.inflateBlock(block, file.readCompressedBlock(block));
+							}
+						}));
+					}
+				}
+				catch (RejectedExecutionException e) {
+					// the decoder stopped and shut the pool down
+				}
+				inflaters.shutdown();
+			}
+		}).start();
+		DAEMONS.newThread(new Runnable() {
+			public void run() {
+				try {
+					for (int b = 0; b < file.getBlockCount() && !closed; b++) {
+						byte[] raw = take(inflated).get();
+						for (Object o : file.decodeBlock(b, raw)) {
+							if (closed) {
+								break;
+							}
+							put(objects, o);
+						}
+					}
+				}
+				catch (ExecutionException e) {
+					fail(e.getCause());
+				}
+				catch (Exception e) {
+					fail(e);
+				}
+				finally {
+					inflaters.shutdownNow();
+					stop(inflated);
+					put(objects, END);
+					try {
+						file.close();
+					}
+					catch (IOException e) {}
+				}
+			}
+		}).start();
+	}
+
+	private void fail(Throwable t) {
+		t.printStackTrace();
+		failure = t;
+	}
+
+	/**
+	 * Tells the stages before the last one to finish, and empties the queue
+	 * the last one reads from so that none of them stays blocked on it.
+	 */
+	private void stop(BlockingQueue<?> input) {
+		stopped = true;
+		input.clear();
+	}
+
+	// the stages never give up on a queue while the pipeline runs; the last
+	// stage unblocks the others through stop() when it ends
+	private static <T> void put(BlockingQueue<T> queue, T element) {
+		while (true) {
+			try {
+				queue.put(element);
+				return;
+			}
+			catch (InterruptedException e) {}
+		}
+	}
+
+	private static <T> T take(BlockingQueue<T> queue) {
+		while (true) {
+			try {
+				return queue.take();
+			}
+			catch (InterruptedException e) {}
+		}
+	}
+
+	/**
+	 * Reads the gunzipped chunks off the chunk queue.
+	 */
+	private static final class ChunkInputStream extends InputStream {
+		private final BlockingQueue<byte[]> chunks;
+		private byte[] chunk = null;
+		private int pos = 0;
+
+		ChunkInputStream(BlockingQueue<byte[]> chunks) {
+			this.chunks = chunks;
+		}
+
+		private boolean fill() {
+			while (chunk == null || pos == chunk.length) {
+				if (chunk == NO_MORE_CHUNKS) {
+					return false;
+				}
+				chunk = take(chunks);
+				pos = 0;
+			}
+			return true;
+		}
+
+		public int read() {
+			return (fill() ? chunk[pos++] & 0xFF : -1);
+		}
+
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			if (!fill()) {
+				return -1;
+			}
+			int n = Math.min(len, chunk.length - pos);
+			System.arraycopy(chunk, pos, b, off, n);
+			pos += n;
+			return n;
+		}
+
+		public int available() {
+			return (chunk == null ? 0 : chunk.length - pos);
+		}
+	}
+
+	public synchronized Object readObject() throws EOFException {
+		if (peeked) {
+			peeked = false;
+			return peekBuffer;
+		}
+		if (finished) {
+			throw new EOFException();
+		}
+		Object o = take(objects);
+		if (o == END) {
+			finished = true;
+			if (failure != null) {
+				throw new RuntimeException("Loading the match failed", failure);
+			}
+			throw new EOFException();
+		}
+		return o;
+	}
+
+	/**
+	 * Stops loading.  Objects not read yet are dropped, and readObject
+	 * reports the end of the match.
+	 */
+	public synchronized void close() {
+		closed = true;
+		finished = true;
+		peeked = false;
+		// the last stage puts at most one more object before it sees the
+		// flag, so it can't block on the queue again
+		objects.clear();
+	}
+
+	public synchronized Object peekObject() throws EOFException {
+		if (!peeked) {
+			peekBuffer = readObject();
+			peeked = true;
+		}
+		return peekBuffer;
+	}
+
+	public boolean isDebuggingAvailable() {
+		return false;
+	}
+
+	public void writeNotification(Notification n) {
+		assert isDebuggingAvailable();
+	}
+
+	public void writeSignal(Signal s) {
+		assert isDebuggingAvailable();
+	}
+}
@@ -0,0 +1,222 @@
+package battlecode.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import battlecode.client.util.PrefetchInputStream;
+
+/**
+ * A non-blocking connection to a match server.
+ *
+ * One selector thread does all of the socket I/O.  Incoming bytes are read
+ * into a direct buffer and handed to a {@link PrefetchInputStream} that the
+ * decoder reads from; when that fills up the thread stops reading until the
+ * decoder catches up.  Outgoing objects are queued by send and serialized
+ * on the selector thread through a single ObjectOutputStream, so the bytes
+ * on the wire are exactly what a blocking ObjectOutputStream on the
+ * socket would have produced, and the caller never waits on the network.
+ */
+public final class SocketTransport {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final SocketChannel channel;
+	private final Selector selector;
+	private final SelectionKey key;
+	private final PrefetchInputStream inbound;
+
+	private final ConcurrentLinkedQueue<Object> outbox = new ConcurrentLinkedQueue<Object>();
+	private final ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+	private final ObjectOutputStream oos;
+
+	// the rest are only touched by the selector thread
+	private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	// serialized bytes that haven't been copied into writeBuffer yet
+	private ByteBuffer backlog = ByteBuffer.allocate(0);
+	// the server closed its end, but readBuffer may still hold data
+	private boolean endOfStream = false;
+	private boolean inputEnded = false;
+
+	private volatile boolean open = true;
+
+	private SocketTransport(SocketChannel channel, int inboundCapacity) throws IOException {
+		this.channel = channel;
+		this.selector = Selector.open();
+		channel.configureBlocking(false);
+		this.key = channel.register(selector, SelectionKey.OP_READ);
+		this.inbound = new PrefetchInputStream(inboundCapacity, new Runnable() {
+			public void run() {
+				selector.wakeup();
+			}
+		});
+		// writes the stream header, which goes out ahead of the first object
+		this.oos = new ObjectOutputStream(serialized);
+		writeBuffer.flip();
+
+		Thread t = new Thread(new Runnable() {
+			public void run() {
+				loop();
+			}
+		}, "socket-io");
+		t.setDaemon(true);
+		t.start();
+		selector.wakeup();
+	}
+
+	/**
+	 * Connects to a match server.
+	 *
+	 * @param inboundCapacity how many received bytes to buffer ahead of the
+	 * decoder
+	 */
+	public static SocketTransport connect(InetSocketAddress address, int inboundCapacity) throws IOException {
+		if (address.isUnresolved()) {
+			throw new UnknownHostException(address.getHostName());
+		}
+		SocketChannel channel = SocketChannel.open(address);
+		try {
+			channel.socket().setTcpNoDelay(true);
+			return new SocketTransport(channel, inboundCapacity);
+		}
+		catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the stream of bytes received from the server
+	 */
+	public PrefetchInputStream getInputStream() {
+		return inbound;
+	}
+
+	/**
+	 * Queues an object to be serialized and sent to the server.
+	 */
+	public void send(Object o) {
+		outbox.add(o);
+		selector.wakeup();
+	}
+
+	public void close() {
+		open = false;
+		selector.wakeup();
+	}
+
+	private void loop() {
+		IOException failure = null;
+		try {
+			while (open) {
+				selector.select();
+				selector.selectedKeys().clear();
+				if (!inputEnded) {
+					read();
+				}
+				write();
+			}
+		}
+		catch (IOException e) {
+			failure = e;
+		}
+		finally {
+			inbound.finish(failure);
+			try {
+				selector.close();
+				channel.close();
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+			System.out.println("Received " + (inbound.getTotalBytes() >> 10) + "KB; decoder waited "
+			                   + inbound.getReadStallNanos() / 1000000 + "ms for data, server held back "
+			                   + inbound.getFillStallNanos() / 1000000 + "ms by a full buffer");
+		}
+	}
+
+	private void read() throws IOException {
+		while (true) {
+			// hand over what is already buffered before reading more
+			readBuffer.flip();
+			inbound.offer(readBuffer);
+			readBuffer.compact();
+			if (endOfStream) {
+				if (readBuffer.position() == 0) {
+					inputEnded = true;
+					inbound.finish(null);
+				}
+				break;
+			}
+			if (!readBuffer.hasRemaining()) {
+				// the decoder is behind; wait for onSpace
+				break;
+			}
+			int n = channel.read(readBuffer);
+			if (n < 0) {
+				endOfStream = true;
+			}
+			else if (n == 0) {
+				break;
+			}
+		}
+		updateInterest();
+	}
+
+	private void write() throws IOException {
+		Object o;
+		boolean queued = false;
+		while ((o = outbox.poll()) != null) {
+			oos.writeObject(o);
+			queued = true;
+		}
+		if (queued) {
+			oos.flush();
+		}
+		if (serialized.size() > 0) {
+			ByteBuffer grown = ByteBuffer.allocate(backlog.remaining() + serialized.size());
+			grown.put(backlog);
+			grown.put(serialized.toByteArray());
+			grown.flip();
+			backlog = grown;
+			serialized.reset();
+		}
+		while (true) {
+			if (!writeBuffer.hasRemaining()) {
+				if (!backlog.hasRemaining()) {
+					break;
+				}
+				writeBuffer.clear();
+				int n = Math.min(writeBuffer.remaining(), backlog.remaining());
+				ByteBuffer chunk = backlog.duplicate();
+				chunk.limit(chunk.position() + n);
+				writeBuffer.put(chunk);
+				backlog.position(backlog.position() + n);
+				writeBuffer.flip();
+			}
+			if (channel.write(writeBuffer) == 0) {
+				break;
+			}
+		}
+		updateInterest();
+	}
+
+	private void updateInterest() {
+		int ops = 0;
+		if (!endOfStream && readBuffer.hasRemaining()) {
+			ops |= SelectionKey.OP_READ;
+		}
+		if (writeBuffer.hasRemaining() || backlog.hasRemaining()) {
+			ops |= SelectionKey.OP_WRITE;
+		}
+		key.interestOps(ops);
+	}
+}
@@ -5,6 +5,8 @@ import battlecode.serial.notification.Notification;
 import battlecode.engine.signal.Signal;
 
 import java.io.*;
+import battlecode.client.util.PrefetchInputStream;
+import battlecode.client.util.SignalStreamReader;
 import battlecode.server.Config;
 import battlecode.server.proxy.XStreamProxy;
 
@@ -12,12 +14,37 @@ public final class StreamClientProxy implements ClientProxy {
 
 	private ObjectInputStream  ois;
 	private ObjectOutputStream oos = null;
+	// set instead of ois when the stream is a binary signal stream
+	private SignalStreamReader signals;
+	// set when reading from a prefetching socket reader
+	private PrefetchInputStream prefetch = null;
+	// set when connected through a non-blocking transport
+	private SocketTransport transport = null;
 
 	private Object peekBuffer;
 	private boolean peeked = false;
 
 	public StreamClientProxy(InputStream stream) throws IOException {
-		if(Config.getGlobalConfig().getBoolean("bc.server.output-xml")) {
+		byte[] header = new byte[4];
+		if (stream instanceof PrefetchInputStream) {
+			prefetch = (PrefetchInputStream) stream;
+			prefetch.peek(header, header.length);
+		}
+		else {
+			if (!stream.markSupported()) {
+				stream = new BufferedInputStream(stream);
+			}
+			stream.mark(4);
+			int n = 0, read;
+			while (n < header.length && (read = stream.read(header, n, header.length - n)) > 0) {
+				n += read;
+			}
+			stream.reset();
+		}
+		if (SignalStreamReader.isSignalStream(header)) {
+			signals = new SignalStreamReader(stream);
+		}
+		else if(Config.getGlobalConfig().getBoolean("bc.server.output-xml")) {
 			ois = XStreamProxy.getXStream().createObjectInputStream(stream);	
 		}
 		else {
@@ -30,6 +57,11 @@ public final class StreamClientProxy implements ClientProxy {
 		oos = os;
 	}
 
+	public StreamClientProxy(SocketTransport transport) throws IOException {
+		this(transport.getInputStream());
+		this.transport = transport;
+	}
+
 	public StreamClientProxy(String path) throws IOException {
 		this(new java.util.zip.GZIPInputStream(new FileInputStream(path)));
 	}
@@ -42,7 +74,7 @@ public final class StreamClientProxy implements ClientProxy {
 		}
 		try {
 
-			Object o = ois.readObject();
+			Object o = (signals != null ? signals.readObject() : ois.readObject());
 			//System.out.println("SP " + o);
                         return o;
 		}
@@ -56,6 +88,10 @@ public final class StreamClientProxy implements ClientProxy {
 	}
 
 	public Object peekObject() throws EOFException {
+		// a prefetched stream knows it has ended without trying to decode
+		if (!peeked && prefetch != null && prefetch.isExhausted()) {
+			throw new EOFException();
+		}
 		if (!peeked) {
 			peekBuffer = readObject();
 			peeked = true;
@@ -64,7 +100,7 @@ public final class StreamClientProxy implements ClientProxy {
 	}
 
 	public boolean isDebuggingAvailable() {
-		return (oos != null);
+		return (oos != null || transport != null);
 	}
 
 	public void writeNotification(Notification n) {
@@ -77,6 +113,10 @@ public final class StreamClientProxy implements ClientProxy {
 
 	private void writeObject(Object o) {
 		assert isDebuggingAvailable();
+		if (transport != null) {
+			transport.send(o);
+			return;
+		}
 		try {
 			oos.writeObject(o);
 		}
@@ -85,7 +125,17 @@ public final class StreamClientProxy implements ClientProxy {
 		}
 	}
 
-	protected void finalize() throws Throwable {
+	/**
+	 * Closes the stream this proxy reads from, and its connection to the
+	 * server if it has one.
+	 */
+	public void close() throws IOException {
+		if (transport != null) transport.close();
 		if (ois != null) ois.close();
+		if (signals != null) signals.close();
+	}
+
+	protected void finalize() throws Throwable {
+		close();
 	}
 }
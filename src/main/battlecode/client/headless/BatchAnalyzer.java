@@ -0,0 +1,339 @@
+package battlecode.client.headless;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import battlecode.client.ClientProxy;
+import battlecode.client.IndexedClientProxy;
+import battlecode.client.StreamClientProxy;
+import battlecode.client.replay.ReplayFile;
+import battlecode.common.Team;
+import battlecode.serial.DominationFactor;
+import battlecode.serial.ExtensibleMetadata;
+import battlecode.serial.GameStats;
+import battlecode.serial.MatchFooter;
+import battlecode.serial.MatchHeader;
+
+/**
+ * Summarizes many saved matches at once, without a display.
+ *
+ * Usage: BatchAnalyzer [-threads n] [-every rounds] [-json] [-o file]
+ *        (dir | file | glob)...
+ *
+ * Every file is read by its own {@link MatchReader} on a pool of worker
+ * threads, one per processor by default.  For each match the output has the
+ * teams, winner, domination factor and length, and every few rounds the
+ * number of robots and bytecodes used by each team.  CSV output has one row
+ * per sample; JSON has one object per match.  A tally of the whole batch
+ * goes to standard error.
+ */
+public final class BatchAnalyzer {
+
+	/** What one match came to. */
+	static final class MatchSummary {
+		String file;
+		int match;
+		String teamA, teamB;
+		Team winner;
+		DominationFactor domination;
+		int rounds;
+		// round, robotsA, robotsB, bytecodesA, bytecodesB
+		final List<long[]> samples = new ArrayList<long[]>();
+	}
+
+	/** Builds the summaries of every match in one file. */
+	private static final class Summarizer extends SimulatingVisitor {
+		private final String file;
+		private final int every;
+		private final List<MatchSummary> matches = new ArrayList<MatchSummary>();
+		private String teamA, teamB;
+		private MatchSummary current;
+
+		Summarizer(String file, int every) {
+			this.file = file;
+			this.every = every;
+		}
+
+		public void visitMetadata(ExtensibleMetadata metadata) {
+			if ("header".equals(metadata.get("type", null))) {
+				teamA = (String) metadata.get("team-a", null);
+				teamB = (String) metadata.get("team-b", null);
+			}
+		}
+
+		public void visitHeader(MatchHeader header) {
+			super.visitHeader(header);
+			current = new MatchSummary();
+			current.file = file;
+			current.match = header.getMatchNumber();
+			current.teamA = teamA;
+			current.teamB = teamB;
+			matches.add(current);
+		}
+
+		protected void visitState(int round, HeadlessState state) {
+			current.rounds = round + 1;
+			if (round % every == 0) {
+				sample(round, state);
+			}
+		}
+
+		private void sample(int round, HeadlessState state) {
+			current.samples.add(new long[] {
+				round,
+				count(state.getRobotCounts(Team.A)),
+				count(state.getRobotCounts(Team.B)),
+				state.getBytecodesUsed(Team.A),
+				state.getBytecodesUsed(Team.B)
+			});
+		}
+
+		public void visitGameStats(GameStats stats) {
+			current.domination = stats.getDominationFactor();
+		}
+
+		public void visitFooter(MatchFooter footer) {
+			current.winner = footer.getWinner();
+			int last = current.rounds - 1;
+			if (last >= 0 && last % every != 0) {
+				sample(last, getState());
+			}
+		}
+
+		private static long count(int[] counts) {
+			long total = 0;
+			for (int c : counts) {
+				total += c;
+			}
+			return total;
+		}
+	}
+
+	static List<MatchSummary> analyze(String path, int every) throws IOException {
+		ClientProxy proxy = (ReplayFile.isReplayFile(path)
+		                     ? new IndexedClientProxy(path)
+		                     : new StreamClientProxy(path));
+		try {
+			Summarizer summarizer = new Summarizer(path, every);
+			new MatchReader(proxy).readAll(summarizer);
+			return summarizer.matches;
+		}
+		finally {
+			proxy.close();
+		}
+	}
+
+	/**
+	 * Expands a directory into the match files in it and a glob into the
+	 * files it matches.
+	 */
+	static List<String> expand(String arg) throws IOException {
+		List<String> paths = new ArrayList<String>();
+		File file = new File(arg);
+		if (file.isDirectory()) {
+			File[] children = file.listFiles();
+			if (children == null) {
+				throw new IOException("Can't list the files in " + arg);
+			}
+			Arrays.sort(children);
+			for (File child : children) {
+				String name = child.getName();
+				if (child.isFile() && (name.endsWith(".rms") || name.endsWith(ReplayFile.EXTENSION))) {
+					paths.add(child.getPath());
+				}
+			}
+		}
+		else if (arg.indexOf('*') >= 0 || arg.indexOf('?') >= 0 || arg.indexOf('[') >= 0) {
+			File dir = file.getParentFile();
+			if (dir == null) {
+				dir = new File(".");
+			}
+			PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + file.getName());
+			File[] children = dir.listFiles();
+			if (children != null) {
+				Arrays.sort(children);
+				for (File child : children) {
+					if (child.isFile() && matcher.matches(Paths.get(child.getName()))) {
+						paths.add(child.getPath());
+					}
+				}
+			}
+		}
+		else {
+			paths.add(arg);
+		}
+		return paths;
+	}
+
+	static void writeCSV(List<MatchSummary> matches, PrintWriter out) {
+		out.println("file,match,team_a,team_b,winner,domination,rounds,round,robots_a,robots_b,bytecodes_a,bytecodes_b");
+		for (MatchSummary m : matches) {
+			String prefix = csv(m.file) + "," + m.match + "," + csv(m.teamA) + "," + csv(m.teamB) + ","
+				+ (m.winner == null ? "" : m.winner) + "," + (m.domination == null ? "" : m.domination) + ","
+				+ m.rounds;
+			for (long[] s : m.samples) {
+				out.println(prefix + "," + s[0] + "," + s[1] + "," + s[2] + "," + s[3] + "," + s[4]);
+			}
+		}
+	}
+
+	static void writeJSON(List<MatchSummary> matches, PrintWriter out) {
+		out.println("[");
+		for (int i = 0; i < matches.size(); i++) {
+			MatchSummary m = matches.get(i);
+			out.print("  {\"file\": " + json(m.file) + ", \"match\": " + m.match
+			          + ", \"teamA\": " + json(m.teamA) + ", \"teamB\": " + json(m.teamB)
+			          + ", \"winner\": " + json(m.winner == null ? null : m.winner.toString())
+			          + ", \"domination\": " + json(m.domination == null ? null : m.domination.toString())
+			          + ", \"rounds\": " + m.rounds + ",\n   \"samples\": [");
+			for (int j = 0; j < m.samples.size(); j++) {
+				long[] s = m.samples.get(j);
+				out.print((j == 0 ? "" : ", ") + "{\"round\": " + s[0] + ", \"robotsA\": " + s[1]
+				          + ", \"robotsB\": " + s[2] + ", \"bytecodesA\": " + s[3]
+				          + ", \"bytecodesB\": " + s[4] + "}");
+			}
+			out.println("]}" + (i + 1 < matches.size() ? "," : ""));
+		}
+		out.println("]");
+	}
+
+	private static String csv(String s) {
+		if (s == null) {
+			return "";
+		}
+		if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0) {
+			return s;
+		}
+		return "\"" + s.replace("\"", "\"\"") + "\"";
+	}
+
+	private static String json(String s) {
+		if (s == null) {
+			return "null";
+		}
+		StringBuilder b = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				b.append('\\').append(c);
+			}
+			else if (c < 0x20) {
+				b.append(String.format("\\u%04x", (int) c));
+			}
+			else {
+				b.append(c);
+			}
+		}
+		return b.append('"').toString();
+	}
+
+	private static void usage() {
+		System.err.println("usage: BatchAnalyzer [-threads n] [-every rounds] [-json] [-o file] (dir | file | glob)...");
+		System.exit(64);
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		System.setProperty("java.awt.headless", "true");
+		battlecode.server.Main.setupConfig(new String[0]);
+
+		int threads = Runtime.getRuntime().availableProcessors();
+		int every = 50;
+		boolean json = false;
+		String output = null;
+		List<String> paths = new ArrayList<String>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-threads")) {
+					threads = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("-every")) {
+					every = Math.max(1, Integer.parseInt(args[++i]));
+				}
+				else if (args[i].equals("-json")) {
+					json = true;
+				}
+				else if (args[i].equals("-o")) {
+					output = args[++i];
+				}
+				else {
+					paths.addAll(expand(args[i]));
+				}
+			}
+		}
+		catch (RuntimeException e) {
+			usage();
+		}
+		catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+		if (paths.isEmpty() || threads < 1) {
+			usage();
+		}
+
+		long start = System.nanoTime();
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, paths.size()));
+		List<Future<List<MatchSummary>>> results = new ArrayList<Future<List<MatchSummary>>>();
+		final int sampleEvery = every;
+		for (final String path : paths) {
+			results.add(pool.submit(new Callable<List<MatchSummary>>() {
+				public List<MatchSummary> call() throws IOException {
+					return analyze(path, sampleEvery);
+				}
+			}));
+		}
+		pool.shutdown();
+
+		List<MatchSummary> matches = new ArrayList<MatchSummary>();
+		int failed = 0;
+		for (int i = 0; i < paths.size(); i++) {
+			try {
+				matches.addAll(results.get(i).get());
+			}
+			catch (ExecutionException e) {
+				System.err.println(paths.get(i) + ": " + e.getCause());
+				failed++;
+			}
+		}
+
+		PrintWriter out = new PrintWriter(output == null
+			? new OutputStreamWriter(System.out)
+			: new OutputStreamWriter(new FileOutputStream(output), "UTF-8"));
+		if (json) {
+			writeJSON(matches, out);
+		}
+		else {
+			writeCSV(matches, out);
+		}
+		out.flush();
+		if (output != null) {
+			out.close();
+		}
+
+		long rounds = 0;
+		int winsA = 0, winsB = 0;
+		for (MatchSummary m : matches) {
+			rounds += m.rounds;
+			if (m.winner == Team.A) winsA++;
+			else if (m.winner == Team.B) winsB++;
+		}
+		double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+		System.err.println(paths.size() + " files (" + failed + " failed), " + matches.size()
+		                   + " matches, " + rounds + " rounds in " + String.format("%.1f", seconds) + "s ("
+		                   + Math.round(rounds / seconds) + " rounds/sec); A won " + winsA + ", B won " + winsB);
+	}
+}
@@ -0,0 +1,125 @@
+package battlecode.client.headless;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+
+import battlecode.client.util.IntObjectMap;
+import battlecode.client.viewer.AbstractAnimation;
+import battlecode.client.viewer.AbstractDrawObject;
+import battlecode.client.viewer.AbstractDrawState;
+import battlecode.client.viewer.FluxDepositState;
+import battlecode.common.MapLocation;
+import battlecode.common.RobotType;
+import battlecode.common.Team;
+import battlecode.serial.RoundStats;
+import battlecode.world.GameMap;
+
+/**
+ * A game state that follows a match through AbstractDrawState's signal
+ * handling without anything to draw: no images, no animations and no fog of
+ * war.
+ */
+public class HeadlessState extends AbstractDrawState<HeadlessState.Robot> {
+
+	/**
+	 * A robot with no artwork.
+	 */
+	public static final class Robot extends AbstractDrawObject<NoAnimation> {
+
+		Robot(int currentRound, RobotType type, Team team, int id) {
+			super(currentRound, type, team, id);
+		}
+
+		Robot(int currentRound, Robot copy) {
+			super(currentRound, copy);
+		}
+
+		// a robot's death takes effect at the end of the round instead of
+		// after an explosion
+		public NoAnimation createDeathExplosionAnim(boolean isSuicide) {
+			return NoAnimation.INSTANCE;
+		}
+
+		public NoAnimation createMortarAttackAnim(MapLocation target) {
+			return NoAnimation.INSTANCE;
+		}
+
+		public NoAnimation createMortarExplosionAnim(NoAnimation mortarAttackAnim) {
+			return NoAnimation.INSTANCE;
+		}
+
+		public NoAnimation createEnergonTransferAnim(MapLocation loc, float amt, boolean isFlux) {
+			return NoAnimation.INSTANCE;
+		}
+	}
+
+	/**
+	 * An animation that is over as soon as it starts.
+	 */
+	public static final class NoAnimation extends AbstractAnimation {
+
+		static final NoAnimation INSTANCE = new NoAnimation();
+
+		private NoAnimation() {
+			super(0);
+		}
+
+		public void updateRound() {
+		}
+
+		public Object clone() {
+			return this;
+		}
+	}
+
+	public HeadlessState(GameMap map) {
+		groundUnits = new IntObjectMap<Robot>();
+		airUnits = new IntObjectMap<Robot>();
+		encampments = new HashSet<MapLocation>();
+		fluxDeposits = new LinkedHashMap<Integer, FluxDepositState>();
+		currentRound = -1;
+		setGameMap(map);
+	}
+
+	public void setGameMap(GameMap map) {
+		super.setGameMap(map);
+		// nothing reads the fog of war without a renderer
+		mapMemoryImage = null;
+	}
+
+	protected Robot createDrawObject(RobotType type, Team team, int id) {
+		return new Robot(currentRound, type, team, id);
+	}
+
+	protected Robot createDrawObject(Robot o) {
+		return new Robot(currentRound, o);
+	}
+
+	public void addMiningAnim(MapLocation loc, float amount) {
+	}
+
+	public synchronized void apply(RoundStats stats) {
+		this.stats = stats;
+	}
+
+	public double getTeamOre(Team t) {
+		return teamResources[t.ordinal()];
+	}
+
+	public double getTeamHP(Team t) {
+		return teamHP[t.ordinal()];
+	}
+
+	/**
+	 * @return the bytecodes the team's robots used in the last round
+	 */
+	public long getBytecodesUsed(Team t) {
+		long total = 0;
+		for (Robot r : getDrawableSet()) {
+			if (r.getTeam() == t) {
+				total += r.getBytecodesUsed();
+			}
+		}
+		return total;
+	}
+}
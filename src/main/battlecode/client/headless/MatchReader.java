@@ -0,0 +1,110 @@
+package battlecode.client.headless;
+
+import java.io.EOFException;
+import java.util.ArrayList;
+import java.util.List;
+
+import battlecode.client.ClientProxy;
+import battlecode.engine.signal.Signal;
+import battlecode.serial.ExtensibleMetadata;
+import battlecode.serial.GameStats;
+import battlecode.serial.MatchFooter;
+import battlecode.serial.MatchHeader;
+import battlecode.serial.RoundDelta;
+import battlecode.serial.RoundStats;
+
+/**
+ * Feeds the object stream of a ClientProxy to a {@link MatchVisitor} on the
+ * calling thread.
+ *
+ * This is the headless counterpart of BufferedMatch: it interprets the stream
+ * the same way, but keeps nothing, starts no threads and has no listeners.
+ */
+public final class MatchReader {
+
+	private final ClientProxy proxy;
+	// signals sent at a break, which BufferedMatch folds into the next round
+	private List<Signal> pendingSignals = null;
+
+	public MatchReader(ClientProxy proxy) {
+		this.proxy = proxy;
+	}
+
+	/**
+	 * Reads the next match, up to and including its footer.
+	 *
+	 * @return false if the stream ended before another match started
+	 * @throws EOFException if the stream ended in the middle of the match
+	 */
+	public boolean readMatch(MatchVisitor visitor) throws EOFException {
+		Object obj;
+		do {
+			try {
+				obj = proxy.readObject();
+			}
+			catch (EOFException e) {
+				return false;
+			}
+			if (obj instanceof ExtensibleMetadata) {
+				visitor.visitMetadata((ExtensibleMetadata) obj);
+			}
+		} while (!(obj instanceof MatchHeader));
+		visitor.visitHeader((MatchHeader) obj);
+
+		int rounds = 0;
+		int stats = 0;
+		pendingSignals = null;
+		while (true) {
+			obj = proxy.readObject();
+			if (obj instanceof RoundDelta) {
+				visitor.visitRound(rounds++, merge((RoundDelta) obj));
+			}
+			else if (obj instanceof RoundStats) {
+				visitor.visitStats(stats++, (RoundStats) obj);
+			}
+			else if (obj instanceof Signal[]) {
+				if (pendingSignals == null) {
+					pendingSignals = new ArrayList<Signal>();
+				}
+				for (Signal s : (Signal[]) obj) {
+					pendingSignals.add(s);
+				}
+			}
+			else if (obj instanceof ExtensibleMetadata) {
+				visitor.visitMetadata((ExtensibleMetadata) obj);
+			}
+			else if (obj instanceof GameStats) {
+				visitor.visitGameStats((GameStats) obj);
+			}
+			else if (obj instanceof MatchFooter) {
+				visitor.visitFooter((MatchFooter) obj);
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Reads every match left in the stream.
+	 *
+	 * @return the number of matches read
+	 */
+	public int readAll(MatchVisitor visitor) throws EOFException {
+		int matches = 0;
+		while (readMatch(visitor)) {
+			matches++;
+		}
+		return matches;
+	}
+
+	private RoundDelta merge(RoundDelta delta) {
+		if (pendingSignals == null) {
+			return delta;
+		}
+		for (Signal s : delta.getSignals()) {
+			pendingSignals.add(s);
+		}
+		RoundDelta merged = new RoundDelta(pendingSignals.toArray(new Signal[pendingSignals.size()]));
+		pendingSignals = null;
+		return merged;
+	}
+}
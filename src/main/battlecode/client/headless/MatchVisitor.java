@@ -0,0 +1,42 @@
+package battlecode.client.headless;
+
+import battlecode.serial.ExtensibleMetadata;
+import battlecode.serial.GameStats;
+import battlecode.serial.MatchFooter;
+import battlecode.serial.MatchHeader;
+import battlecode.serial.RoundDelta;
+import battlecode.serial.RoundStats;
+
+/**
+ * Receives the objects of a match stream in order, as a {@link MatchReader}
+ * reads them.  Every method does nothing by default.
+ *
+ * Nothing is retained between calls, so a visitor that needs earlier rounds
+ * has to keep what it wants itself.
+ */
+public abstract class MatchVisitor {
+
+	public void visitHeader(MatchHeader header) {
+	}
+
+	public void visitMetadata(ExtensibleMetadata metadata) {
+	}
+
+	/**
+	 * @param round the index of this round in the match, starting at 0
+	 */
+	public void visitRound(int round, RoundDelta delta) {
+	}
+
+	/**
+	 * @param round the index of the round these stats belong to
+	 */
+	public void visitStats(int round, RoundStats stats) {
+	}
+
+	public void visitGameStats(GameStats stats) {
+	}
+
+	public void visitFooter(MatchFooter footer) {
+	}
+}
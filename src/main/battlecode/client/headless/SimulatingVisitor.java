@@ -0,0 +1,46 @@
+package battlecode.client.headless;
+
+import battlecode.serial.MatchHeader;
+import battlecode.serial.RoundDelta;
+import battlecode.serial.RoundStats;
+
+/**
+ * A MatchVisitor that keeps a {@link HeadlessState} up to date with the
+ * match and shows it to {@link #visitState} after every round.
+ *
+ * Only the current state is kept, so memory stays bounded by the size of the
+ * map and the number of live robots however long the match runs.
+ */
+public abstract class SimulatingVisitor extends MatchVisitor {
+
+	private HeadlessState state = null;
+
+	/**
+	 * Called after the given round has been applied to the state.
+	 */
+	protected abstract void visitState(int round, HeadlessState state);
+
+	protected HeadlessState createState(MatchHeader header) {
+		return new HeadlessState(header.getMap());
+	}
+
+	/**
+	 * @return the state of the match being read, or null before its header
+	 */
+	public HeadlessState getState() {
+		return state;
+	}
+
+	public void visitHeader(MatchHeader header) {
+		state = createState(header);
+	}
+
+	public void visitRound(int round, RoundDelta delta) {
+		state.apply(delta);
+		visitState(round, state);
+	}
+
+	public void visitStats(int round, RoundStats stats) {
+		state.apply(stats);
+	}
+}
@@ -0,0 +1,118 @@
+package battlecode.client.replay;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import battlecode.client.util.SignalStreamWriter;
+
+/**
+ * Converts saved .rms matches into indexed match files, or into .rms files
+ * holding a gzipped binary signal stream.
+ *
+ * Usage: ReplayConverter match.rms [match.rmx | compact.rms]
+ */
+public class ReplayConverter {
+
+	/**
+	 * Copies every object of a gzipped .rms file into a new indexed match
+	 * file.
+	 *
+	 * @return the number of objects copied
+	 */
+	public static int convert(String rmsPath, String replayPath) throws IOException {
+		ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(
+			new GZIPInputStream(new FileInputStream(rmsPath)), 1 << 16));
+		final ReplayWriter out = new ReplayWriter(replayPath);
+		try {
+			return copy(rmsPath, in, new Sink() {
+				public void write(Object o) throws IOException {
+					out.write(o);
+				}
+			});
+		}
+		finally {
+			in.close();
+			out.close();
+		}
+	}
+
+	/**
+	 * Copies every object of a gzipped .rms file into a new .rms file in the
+	 * binary signal stream format.
+	 *
+	 * @return the number of objects copied
+	 */
+	public static int convertToSignalStream(String rmsPath, String outputPath) throws IOException {
+		ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(
+			new GZIPInputStream(new FileInputStream(rmsPath)), 1 << 16));
+		final SignalStreamWriter out = new SignalStreamWriter(
+			new GZIPOutputStream(new FileOutputStream(outputPath), 1 << 16));
+		try {
+			return copy(rmsPath, in, new Sink() {
+				public void write(Object o) throws IOException {
+					out.write(o);
+				}
+			});
+		}
+		finally {
+			in.close();
+			out.close();
+		}
+	}
+
+	private interface Sink {
+		void write(Object o) throws IOException;
+	}
+
+	private static int copy(String rmsPath, ObjectInputStream in, Sink out) throws IOException {
+		int count = 0;
+		while (true) {
+			Object o;
+			try {
+				o = in.readObject();
+			}
+			catch (EOFException e) {
+				break;
+			}
+			catch (ClassNotFoundException e) {
+				throw new IOException("Unknown class in " + rmsPath, e);
+			}
+			out.write(o);
+			count++;
+		}
+		return count;
+	}
+
+	public static String defaultReplayPath(String rmsPath) {
+		if (rmsPath.endsWith(".rms")) {
+			rmsPath = rmsPath.substring(0, rmsPath.length() - 4);
+		}
+		return rmsPath + ReplayFile.EXTENSION;
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 1 || args.length > 2) {
+			System.err.println("usage: ReplayConverter match.rms [match" + ReplayFile.EXTENSION + " | compact.rms]");
+			System.exit(64);
+		}
+		String output = (args.length > 1 ? args[1] : defaultReplayPath(args[0]));
+		try {
+			long start = System.nanoTime();
+			int count = (output.endsWith(".rms")
+			             ? convertToSignalStream(args[0], output)
+			             : convert(args[0], output));
+			System.out.println("Wrote " + count + " objects to " + output + " in "
+			                   + (System.nanoTime() - start) / 1000000 + "ms");
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
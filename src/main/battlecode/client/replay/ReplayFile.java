@@ -0,0 +1,268 @@
+package battlecode.client.replay;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import battlecode.client.util.SignalCodec;
+import battlecode.serial.RoundDelta;
+
+/**
+ * Random access to an indexed match file.
+ *
+ * An indexed match file holds the same objects as a .rms file, grouped into
+ * independently deflated blocks.  Rounds are stored with a {@link SignalCodec}
+ * and everything else with Java serialization.  A footer at the end of the
+ * file indexes every block, where each match starts, and which block and
+ * record hold each of its rounds, so opening a file reads only the footer and
+ * any block can be decoded on its own.
+ *
+ * <pre>
+ * file    = MAGIC VERSION block* footer footerOffset:long MAGIC
+ * block   = deflate(recordSectionLength:varint record* objectStream)
+ * record  = ROUND length:varint signals | OBJECT
+ * footer  = tagCount (className:UTF signature:UTF)*
+ *           blockCount (offset:long length:int rawLength:int records:int)*
+ *           matchCount (firstBlock:int rounds:int (block:int record:int)*)*
+ * </pre>
+ *
+ * OBJECT records are read in order from the block's object stream, a single
+ * ObjectInputStream that follows the record section.  Each signal class is
+ * stored with its {@link SignalCodec#getTagSignature signature}, and a file
+ * whose signatures don't match the classes on hand is refused when opened.
+ *
+ * Blocks may be read and decoded from any number of threads at once.
+ */
+public final class ReplayFile implements Closeable {
+
+	public static final int MAGIC = 0x42435258; // "BCRX"
+	public static final int VERSION = 3;
+	public static final String EXTENSION = ".rmx";
+
+	static final int RECORD_ROUND = 0;
+	static final int RECORD_OBJECT = 1;
+
+	// the trailer is the footer offset followed by the magic number
+	static final int TRAILER_SIZE = 12;
+
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private final SignalCodec codec = new SignalCodec();
+
+	private final long[] blockOffsets;
+	private final int[] blockLengths;
+	private final int[] blockRawLengths;
+	private final int[] blockRecords;
+
+	private final int[] matchFirstBlocks;
+	// per match, the block and record of each round, interleaved
+	private final int[][] matchRounds;
+
+	/**
+	 * @return whether the file at the given path starts like an indexed match
+	 * file
+	 */
+	public static boolean isReplayFile(String path) {
+		try {
+			RandomAccessFile f = new RandomAccessFile(path, "r");
+			try {
+				return f.length() >= 8 + TRAILER_SIZE && f.readInt() == MAGIC;
+			}
+			finally {
+				f.close();
+			}
+		}
+		catch (IOException e) {
+			return false;
+		}
+	}
+
+	public ReplayFile(String path) throws IOException {
+		raf = new RandomAccessFile(path, "r");
+		channel = raf.getChannel();
+		try {
+			ByteBuffer head = read(0, 8);
+			if (head.getInt() != MAGIC) {
+				throw new IOException(path + " is not an indexed match file");
+			}
+			int version = head.getInt();
+			if (version != VERSION) {
+				throw new IOException(path + " has unsupported version " + version);
+			}
+			long length = channel.size();
+			ByteBuffer trailer = read(length - TRAILER_SIZE, TRAILER_SIZE);
+			long footerOffset = trailer.getLong();
+			if (trailer.getInt() != MAGIC) {
+				throw new IOException(path + " is truncated");
+			}
+			ByteBuffer footer = read(footerOffset, (int) (length - TRAILER_SIZE - footerOffset));
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				footer.array(), footer.arrayOffset(), footer.remaining()));
+
+			int tags = in.readInt();
+			for (int i = 0; i < tags; i++) {
+				String className = in.readUTF();
+				try {
+					codec.defineTag(className, in.readUTF());
+				}
+				catch (ClassNotFoundException e) {
+					throw new IOException("Unknown signal class " + className, e);
+				}
+			}
+
+			int blocks = in.readInt();
+			blockOffsets = new long[blocks];
+			blockLengths = new int[blocks];
+			blockRawLengths = new int[blocks];
+			blockRecords = new int[blocks];
+			for (int i = 0; i < blocks; i++) {
+				blockOffsets[i] = in.readLong();
+				blockLengths[i] = in.readInt();
+				blockRawLengths[i] = in.readInt();
+				blockRecords[i] = in.readInt();
+			}
+
+			int matches = in.readInt();
+			matchFirstBlocks = new int[matches];
+			matchRounds = new int[matches][];
+			for (int m = 0; m < matches; m++) {
+				matchFirstBlocks[m] = in.readInt();
+				int rounds = in.readInt();
+				int[] locations = new int[2 * rounds];
+				for (int i = 0; i < locations.length; i++) {
+					locations[i] = in.readInt();
+				}
+				matchRounds[m] = locations;
+			}
+		}
+		catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(length);
+		while (buf.hasRemaining()) {
+			if (channel.read(buf, position + buf.position()) < 0) {
+				throw new EOFException();
+			}
+		}
+		buf.flip();
+		return buf;
+	}
+
+	public int getBlockCount() {
+		return blockOffsets.length;
+	}
+
+	public int getBlockRawLength(int block) {
+		return blockRawLengths[block];
+	}
+
+	public int getMatchCount() {
+		return matchFirstBlocks.length;
+	}
+
+	/**
+	 * @return the block holding the header of the given match
+	 */
+	public int getMatchFirstBlock(int match) {
+		return matchFirstBlocks[match];
+	}
+
+	public int getRoundCount(int match) {
+		return matchRounds[match].length / 2;
+	}
+
+	/**
+	 * @return the still deflated contents of a block
+	 */
+	public byte[] readCompressedBlock(int block) throws IOException {
+		ByteBuffer buf = read(blockOffsets[block], blockLengths[block]);
+		return buf.array();
+	}
+
+	/**
+	 * Inflates a block returned by readCompressedBlock.
+	 */
+	public byte[] inflateBlock(int block, byte[] compressed) throws IOException {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(compressed);
+			byte[] raw = new byte[blockRawLengths[block]];
+			int n = 0;
+			while (n < raw.length) {
+				int read = inflater.inflate(raw, n, raw.length - n);
+				if (read == 0 && (inflater.finished() || inflater.needsInput())) {
+					throw new IOException("Block " + block + " is truncated");
+				}
+				if (read == 0 && inflater.needsDictionary()) {
+					throw new IOException("Block " + block + " needs a preset dictionary");
+				}
+				n += read;
+			}
+			return raw;
+		}
+		catch (DataFormatException e) {
+			throw new IOException("Block " + block + " is corrupt", e);
+		}
+		finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Decodes an inflated block into its records, in file order.  Rounds come
+	 * back as RoundDeltas and everything else as the deserialized object.
+	 */
+	public Object[] decodeBlock(int block, byte[] raw) throws IOException {
+		ByteBuffer in = ByteBuffer.wrap(raw);
+		int sectionLength = SignalCodec.readVarInt(in);
+		int objectsStart = in.position() + sectionLength;
+		Object[] records = new Object[blockRecords[block]];
+		ObjectInputStream objects = null;
+		for (int i = 0; i < records.length; i++) {
+			int kind = in.get();
+			if (kind == RECORD_ROUND) {
+				int length = SignalCodec.readVarInt(in);
+				ByteBuffer signals = in.slice();
+				signals.limit(length);
+				records[i] = new RoundDelta(codec.readSignals(signals));
+				in.position(in.position() + length);
+			}
+			else {
+				if (objects == null) {
+					objects = new ObjectInputStream(new ByteArrayInputStream(
+						raw, objectsStart, raw.length - objectsStart));
+				}
+				try {
+					records[i] = objects.readObject();
+				}
+				catch (ClassNotFoundException e) {
+					throw new IOException("Block " + block + " holds an unknown class", e);
+				}
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * Reads, inflates and decodes a block.
+	 */
+	public Object[] readBlock(int block) throws IOException {
+		return decodeBlock(block, inflateBlock(block, readCompressedBlock(block)));
+	}
+
+	public void close() throws IOException {
+		raf.close();
+	}
+}
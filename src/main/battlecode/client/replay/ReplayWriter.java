@@ -0,0 +1,171 @@
+package battlecode.client.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import battlecode.client.util.SignalCodec;
+import battlecode.serial.MatchHeader;
+import battlecode.serial.RoundDelta;
+
+/**
+ * Writes the objects of a match stream into an indexed match file.
+ *
+ * Objects are collected into blocks of roughly BLOCK_SIZE bytes, and every
+ * match starts a new block so that seeking to a match never decodes the end
+ * of the previous one.  The index is written when the writer is closed.
+ *
+ * @see ReplayFile
+ */
+public final class ReplayWriter implements Closeable {
+
+	public static final int BLOCK_SIZE = 128 << 10;
+
+	private final DataOutputStream out;
+	private long position = 0;
+
+	private final SignalCodec codec = new SignalCodec();
+	private final SignalCodec.Output records = new SignalCodec.Output(BLOCK_SIZE);
+	private final SignalCodec.Output scratch = new SignalCodec.Output();
+	private final ByteArrayOutputStream objectBytes = new ByteArrayOutputStream(BLOCK_SIZE);
+	private ObjectOutputStream objects = null;
+	private int blockRecords = 0;
+	private final Deflater deflater = new Deflater();
+	private byte[] deflated = new byte[BLOCK_SIZE];
+
+	private final List<long[]> blocks = new ArrayList<long[]>();
+	private final List<Integer> matchFirstBlocks = new ArrayList<Integer>();
+	private final List<int[]> matchRounds = new ArrayList<int[]>();
+	private int[] rounds = null;
+	private int roundCount = 0;
+
+	public ReplayWriter(String path) throws IOException {
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16));
+		out.writeInt(ReplayFile.MAGIC);
+		out.writeInt(ReplayFile.VERSION);
+		position = 8;
+	}
+
+	/**
+	 * Appends the next object of the match stream.
+	 */
+	public void write(Object o) throws IOException {
+		if (o instanceof MatchHeader) {
+			flushBlock();
+			endMatch();
+			matchFirstBlocks.add(blocks.size());
+			rounds = new int[2 * 256];
+			roundCount = 0;
+		}
+		if (o instanceof RoundDelta) {
+			if (rounds != null) {
+				if (2 * roundCount == rounds.length) {
+					rounds = Arrays.copyOf(rounds, rounds.length * 2);
+				}
+				rounds[2 * roundCount] = blocks.size();
+				rounds[2 * roundCount + 1] = blockRecords;
+				roundCount++;
+			}
+			scratch.reset();
+			codec.writeSignals(((RoundDelta) o).getSignals(), scratch);
+			records.writeByte(ReplayFile.RECORD_ROUND);
+			records.writeVarInt(scratch.size());
+			records.write(scratch.array(), 0, scratch.size());
+		}
+		else {
+			if (objects == null) {
+				objects = new ObjectOutputStream(objectBytes);
+			}
+			records.writeByte(ReplayFile.RECORD_OBJECT);
+			objects.writeObject(o);
+			objects.flush();
+		}
+		blockRecords++;
+		if (records.size() + objectBytes.size() >= BLOCK_SIZE) {
+			flushBlock();
+		}
+	}
+
+	private void endMatch() {
+		if (rounds != null) {
+			matchRounds.add(Arrays.copyOf(rounds, 2 * roundCount));
+			rounds = null;
+		}
+	}
+
+	private void flushBlock() throws IOException {
+		if (blockRecords == 0) {
+			return;
+		}
+		if (objects != null) {
+			objects.close();
+			objects = null;
+		}
+		SignalCodec.Output raw = new SignalCodec.Output(records.size() + objectBytes.size() + 5);
+		raw.writeVarInt(records.size());
+		raw.write(records.array(), 0, records.size());
+		byte[] objectArray = objectBytes.toByteArray();
+		raw.write(objectArray, 0, objectArray.length);
+
+		deflater.reset();
+		deflater.setInput(raw.array(), 0, raw.size());
+		deflater.finish();
+		int length = 0;
+		while (!deflater.finished()) {
+			if (length == deflated.length) {
+				deflated = Arrays.copyOf(deflated, deflated.length * 2);
+			}
+			length += deflater.deflate(deflated, length, deflated.length - length);
+		}
+		out.write(deflated, 0, length);
+		blocks.add(new long[] { position, length, raw.size(), blockRecords });
+		position += length;
+
+		records.reset();
+		objectBytes.reset();
+		blockRecords = 0;
+	}
+
+	/**
+	 * Writes the last block and the index, and closes the file.
+	 */
+	public void close() throws IOException {
+		flushBlock();
+		endMatch();
+		deflater.end();
+		long footerOffset = position;
+
+		out.writeInt(codec.getTagCount());
+		for (int i = 0; i < codec.getTagCount(); i++) {
+			out.writeUTF(codec.getTagClassName(i));
+			out.writeUTF(codec.getTagSignature(i));
+		}
+		out.writeInt(blocks.size());
+		for (long[] block : blocks) {
+			out.writeLong(block[0]);
+			out.writeInt((int) block[1]);
+			out.writeInt((int) block[2]);
+			out.writeInt((int) block[3]);
+		}
+		out.writeInt(matchRounds.size());
+		for (int m = 0; m < matchRounds.size(); m++) {
+			int[] locations = matchRounds.get(m);
+			out.writeInt(matchFirstBlocks.get(m));
+			out.writeInt(locations.length / 2);
+			for (int i = 0; i < locations.length; i++) {
+				out.writeInt(locations[i]);
+			}
+		}
+		out.writeLong(footerOffset);
+		out.writeInt(ReplayFile.MAGIC);
+		out.close();
+	}
+}
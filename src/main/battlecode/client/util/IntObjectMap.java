@@ -0,0 +1,214 @@
+package battlecode.client.util;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A map from int keys to non-null objects that iterates in insertion order,
+ * like a LinkedHashMap, without boxing keys or allocating per entry.
+ *
+ * Entries live in parallel key and value arrays in the order they were
+ * added.  An open-addressing table with linear probing maps each key to its
+ * entry.  Removing an entry leaves a hole that iteration skips; holes are
+ * squeezed out the next time the arrays have to grow.
+ */
+public class IntObjectMap<V> implements Iterable<V> {
+
+	// table slots hold an entry index + 1, or one of these
+	private static final int FREE = 0;
+	private static final int REMOVED = -1;
+
+	private int[] table;
+	private int[] keys;
+	private Object[] values;
+	// entries in use, including holes
+	private int end = 0;
+	private int size = 0;
+	// table slots that are not FREE
+	private int tableUsed = 0;
+
+	public IntObjectMap() {
+		this(16);
+	}
+
+	public IntObjectMap(int expectedSize) {
+		int capacity = Math.max(expectedSize, 4);
+		keys = new int[capacity];
+		values = new Object[capacity];
+		table = new int[tableSizeFor(capacity)];
+	}
+
+	private static int tableSizeFor(int capacity) {
+		int n = 8;
+		while (n < capacity * 2) {
+			n <<= 1;
+		}
+		return n;
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	// the table slot holding key, or -1
+	private int find(int key) {
+		int mask = table.length - 1;
+		for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+			int entry = table[i];
+			if (entry == FREE) {
+				return -1;
+			}
+			if (entry != REMOVED && keys[entry - 1] == key) {
+				return i;
+			}
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean containsKey(int key) {
+		return find(key) >= 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		int slot = find(key);
+		return (slot < 0 ? null : (V) values[table[slot] - 1]);
+	}
+
+	/**
+	 * Maps key to value.  A key that is already present keeps its place in
+	 * the iteration order.
+	 *
+	 * @return the previous value for key, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		if (value == null) {
+			throw new IllegalArgumentException("null value for key " + key);
+		}
+		int slot = find(key);
+		if (slot >= 0) {
+			int entry = table[slot] - 1;
+			V previous = (V) values[entry];
+			values[entry] = value;
+			return previous;
+		}
+		if (end == keys.length || (tableUsed + 1) * 2 > table.length) {
+			rebuild(size + 1 > keys.length / 2 ? keys.length * 2 : keys.length);
+		}
+		keys[end] = key;
+		values[end] = value;
+		end++;
+		size++;
+		int mask = table.length - 1;
+		int i = hash(key) & mask;
+		while (table[i] > 0) {
+			i = (i + 1) & mask;
+		}
+		if (table[i] == FREE) {
+			tableUsed++;
+		}
+		table[i] = end;
+		return null;
+	}
+
+	/**
+	 * @return the value that was mapped to key, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		int slot = find(key);
+		if (slot < 0) {
+			return null;
+		}
+		int entry = table[slot] - 1;
+		V previous = (V) values[entry];
+		values[entry] = null;
+		table[slot] = REMOVED;
+		size--;
+		return previous;
+	}
+
+	public void clear() {
+		Arrays.fill(table, FREE);
+		Arrays.fill(values, 0, end, null);
+		end = 0;
+		size = 0;
+		tableUsed = 0;
+	}
+
+	// squeezes out holes and rehashes into arrays of the given capacity
+	private void rebuild(int capacity) {
+		int[] newKeys = new int[capacity];
+		Object[] newValues = new Object[capacity];
+		int n = 0;
+		for (int i = 0; i < end; i++) {
+			if (values[i] != null) {
+				newKeys[n] = keys[i];
+				newValues[n] = values[i];
+				n++;
+			}
+		}
+		keys = newKeys;
+		values = newValues;
+		end = n;
+		table = new int[tableSizeFor(capacity)];
+		int mask = table.length - 1;
+		for (int e = 0; e < n; e++) {
+			int i = hash(keys[e]) & mask;
+			while (table[i] != FREE) {
+				i = (i + 1) & mask;
+			}
+			table[i] = e + 1;
+		}
+		tableUsed = n;
+	}
+
+	/**
+	 * Iterates over the values in insertion order.  The iterator supports
+	 * remove; the map must not otherwise be changed during iteration.
+	 */
+	public Iterator<V> iterator() {
+		return new Iterator<V>() {
+			private int next = skipHoles(0);
+			private int last = -1;
+
+			public boolean hasNext() {
+				return next < end;
+			}
+
+			@SuppressWarnings("unchecked")
+			public V next() {
+				if (next >= end) {
+					throw new NoSuchElementException();
+				}
+				last = next;
+				next = skipHoles(next + 1);
+				return (V) values[last];
+			}
+
+			public void remove() {
+				if (last < 0 || values[last] == null) {
+					throw new IllegalStateException();
+				}
+				IntObjectMap.this.remove(keys[last]);
+			}
+		};
+	}
+
+	private int skipHoles(int i) {
+		while (i < end && values[i] == null) {
+			i++;
+		}
+		return i;
+	}
+}
@@ -0,0 +1,240 @@
+package battlecode.client.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An input stream served from a bounded ring buffer that a caller doing its
+ * own I/O, such as a selector thread, fills through offer and finish.
+ *
+ * A decoder reading the stream only waits when it has caught up with
+ * everything that has arrived.  When the buffer is full offer takes nothing,
+ * and the filler is told through a callback once the decoder has made room,
+ * so it can stop reading in the meantime and push back on the sender through
+ * the socket's own flow control.
+ */
+public final class PrefetchInputStream extends InputStream {
+
+	private final byte[] ring;
+	// run when a full buffer gets room again
+	private final Runnable onSpace;
+
+	// guarded by this; the bytes not yet read are [head, head + count)
+	private int head = 0;
+	private int count = 0;
+	private boolean finished = false;
+	private IOException failure = null;
+
+	private long totalBytes = 0;
+	private long readStallNanos = 0;
+	private long fillStallNanos = 0;
+	// when the buffer last became full, or 0 if it isn't
+	private long fullSince = 0;
+
+	/**
+	 * @param onSpace called when a full buffer has room again
+	 */
+	public PrefetchInputStream(int capacity, Runnable onSpace) {
+		this.ring = new byte[capacity];
+		this.onSpace = onSpace;
+	}
+
+	/**
+	 * Copies as much of the given buffer as fits into the ring, without
+	 * waiting.
+	 *
+	 * @return the number of bytes taken
+	 */
+	public synchronized int offer(ByteBuffer src) {
+		if (finished) {
+			src.position(src.limit());
+			return 0;
+		}
+		int n = Math.min(src.remaining(), ring.length - count);
+		int tail = (head + count) % ring.length;
+		int first = Math.min(n, ring.length - tail);
+		src.get(ring, tail, first);
+		src.get(ring, 0, n - first);
+		added(n);
+		return n;
+	}
+
+	/**
+	 * Marks the end of the data passed to offer.
+	 *
+	 * @param e the error that ended it, or null at a clean end of stream
+	 */
+	public synchronized void finish(IOException e) {
+		failure = e;
+		finished = true;
+		notifyAll();
+	}
+
+	/**
+	 * @return whether the buffer has no room for more data
+	 */
+	public synchronized boolean isFull() {
+		return count == ring.length;
+	}
+
+	private void added(int n) {
+		count += n;
+		totalBytes += n;
+		if (count == ring.length && n > 0) {
+			fullSince = System.nanoTime();
+		}
+		notifyAll();
+	}
+
+	private void consumed(int n) {
+		if (count == ring.length && n > 0) {
+			fillStallNanos += System.nanoTime() - fullSince;
+			fullSince = 0;
+			if (onSpace != null) {
+				onSpace.run();
+			}
+		}
+		head = (head + n) % ring.length;
+		count -= n;
+		notifyAll();
+	}
+
+	/**
+	 * Waits for data.
+	 *
+	 * @return false at the end of the stream
+	 */
+	private boolean awaitData() throws IOException {
+		if (count == 0 && !finished) {
+			long start = System.nanoTime();
+			try {
+				while (count == 0 && !finished) {
+					wait();
+				}
+			}
+			catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+			finally {
+				readStallNanos += System.nanoTime() - start;
+			}
+		}
+		if (count == 0) {
+			if (failure != null) {
+				throw failure;
+			}
+			return false;
+		}
+		return true;
+	}
+
+	public synchronized int read() throws IOException {
+		if (!awaitData()) {
+			return -1;
+		}
+		int b = ring[head] & 0xFF;
+		consumed(1);
+		return b;
+	}
+
+	public synchronized int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!awaitData()) {
+			return -1;
+		}
+		int n = Math.min(len, count);
+		int first = Math.min(n, ring.length - head);
+		System.arraycopy(ring, head, b, off, first);
+		System.arraycopy(ring, 0, b, off + first, n - first);
+		consumed(n);
+		return n;
+	}
+
+	/**
+	 * Copies the next bytes of the stream without consuming them, waiting
+	 * until that many have arrived or the stream ends.
+	 *
+	 * @return the number of bytes copied, less than len only at the end of
+	 * the stream
+	 */
+	public synchronized int peek(byte[] b, int len) throws IOException {
+		len = Math.min(len, ring.length);
+		if (count < len && !finished) {
+			long start = System.nanoTime();
+			try {
+				while (count < len && !finished) {
+					wait();
+				}
+			}
+			catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+			finally {
+				readStallNanos += System.nanoTime() - start;
+			}
+		}
+		int n = Math.min(len, count);
+		for (int i = 0; i < n; i++) {
+			b[i] = ring[(head + i) % ring.length];
+		}
+		return n;
+	}
+
+	public synchronized int available() {
+		return count;
+	}
+
+	/**
+	 * @return whether the source has ended and everything it sent has been
+	 * read, without waiting for more data
+	 */
+	public synchronized boolean isExhausted() {
+		return finished && count == 0;
+	}
+
+	/**
+	 * @return the number of bytes received but not yet read
+	 */
+	public synchronized int getBufferedBytes() {
+		return count;
+	}
+
+	/**
+	 * @return the number of bytes received so far
+	 */
+	public synchronized long getTotalBytes() {
+		return totalBytes;
+	}
+
+	/**
+	 * @return how long readers have spent waiting for data to arrive
+	 */
+	public synchronized long getReadStallNanos() {
+		return readStallNanos;
+	}
+
+	/**
+	 * @return how long the buffer has spent full, holding back the sender
+	 */
+	public synchronized long getFillStallNanos() {
+		long stall = fillStallNanos;
+		if (fullSince != 0) {
+			stall += System.nanoTime() - fullSince;
+		}
+		return stall;
+	}
+
+	public synchronized void close() {
+		if (fullSince != 0) {
+			fillStallNanos += System.nanoTime() - fullSince;
+			fullSince = 0;
+		}
+		finished = true;
+		count = 0;
+		notifyAll();
+	}
+}
@@ -0,0 +1,894 @@
+package battlecode.client.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamConstants;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import battlecode.common.MapLocation;
+import battlecode.engine.signal.Signal;
+
+/**
+ * A compact binary encoding for engine signals.
+ *
+ * Every signal class gets a small integer tag the first time it is seen, and a
+ * field layout derived from its serializable fields.  A signal is then written
+ * as its tag followed by its fields in layout order: ints and longs as zigzag
+ * varints, floating point values raw, enums as ordinals, locations as the
+ * varint distance from the previous location of the round, and primitive
+ * arrays as a length followed by their elements.  Field types the codec does
+ * not understand fall back to Java serialization, as do whole signals whose
+ * class can't be instantiated; either kind of fallback is logged once per
+ * class.  A round's serialized values share a single object stream, stored
+ * ahead of its signals:
+ *
+ * <pre>
+ * round = count:varint objectsLength:varint objectStream? signal*
+ * </pre>
+ *
+ * Decoded signals are made the way Java serialization makes them, without
+ * running any of their constructors, unless the class declares a no-arg
+ * constructor; every field is then filled in from the encoding.
+ *
+ * Encoding is single-threaded; decoding only reads the layout table and may
+ * run concurrently with encoding on any number of threads.
+ */
+public final class SignalCodec {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int K_BOOLEAN = 0;
+	private static final int K_BYTE = 1;
+	private static final int K_SHORT = 2;
+	private static final int K_CHAR = 3;
+	private static final int K_INT = 4;
+	private static final int K_LONG = 5;
+	private static final int K_FLOAT = 6;
+	private static final int K_DOUBLE = 7;
+	private static final int K_STRING = 8;
+	private static final int K_ENUM = 9;
+	private static final int K_LOCATION = 10;
+	private static final int K_ARRAY = 11;
+	private static final int K_SERIAL = 12;
+
+	/** How one value of a given static type is written. */
+	private static final class ValueType {
+		final int kind;
+		final Class<?> type;
+		final ValueType component;
+		final Object[] constants;
+
+		ValueType(Class<?> type) {
+			this.type = type;
+			if (type == boolean.class) kind = K_BOOLEAN;
+			else if (type == byte.class) kind = K_BYTE;
+			else if (type == short.class) kind = K_SHORT;
+			else if (type == char.class) kind = K_CHAR;
+			else if (type == int.class) kind = K_INT;
+			else if (type == long.class) kind = K_LONG;
+			else if (type == float.class) kind = K_FLOAT;
+			else if (type == double.class) kind = K_DOUBLE;
+			else if (type == String.class) kind = K_STRING;
+			else if (type.isEnum()) kind = K_ENUM;
+			else if (type == MapLocation.class) kind = K_LOCATION;
+			else if (type.isArray()) kind = K_ARRAY;
+			else kind = K_SERIAL;
+			component = (kind == K_ARRAY ? new ValueType(type.getComponentType()) : null);
+			constants = (kind == K_ENUM ? type.getEnumConstants() : null);
+		}
+	}
+
+	/**
+	 * The field layout of one signal class, and how to make an instance of
+	 * it to fill in.  Layouts don't depend on the codec, so every codec
+	 * shares the one for each class.
+	 */
+	private static final class Layout {
+		final Class<?> type;
+		// the declared no-arg constructor, if any
+		final Constructor<?> constructor;
+		// otherwise, a serialization stream describing the class with no
+		// fields, from which an Instantiator makes empty instances
+		final byte[] template;
+		// false if neither works, in which case whole signals of this class
+		// are written with Java serialization
+		final boolean instantiable;
+		final Field[] fields;
+		final ValueType[] types;
+		final String signature;
+
+		Layout(Class<?> type) {
+			this.type = type;
+			List<Field> list = new ArrayList<Field>();
+			collectFields(type, list);
+			fields = list.toArray(new Field[list.size()]);
+			types = new ValueType[fields.length];
+			for (int i = 0; i < fields.length; i++) {
+				fields[i].setAccessible(true);
+				types[i] = new ValueType(fields[i].getType());
+				if (types[i].kind == K_SERIAL) {
+					System.err.println("SignalCodec: writing " + type.getName() + "." + fields[i].getName()
+					                   + " with Java serialization");
+				}
+			}
+			ObjectStreamClass serial = ObjectStreamClass.lookup(type);
+			Constructor<?> noArgs = null;
+			byte[] bytes = null;
+			boolean works = false;
+			if (serial != null && !Modifier.isAbstract(type.getModifiers())) {
+				try {
+					noArgs = type.getDeclaredConstructor();
+					noArgs.setAccessible(true);
+				}
+				catch (NoSuchMethodException | RuntimeException e) {
+					noArgs = null;
+					bytes = template(type, serial);
+				}
+				works = (noArgs != null || Instantiator.probe(this, bytes));
+			}
+			constructor = noArgs;
+			template = bytes;
+			instantiable = works;
+			if (!works) {
+				System.err.println("SignalCodec: can't instantiate " + type.getName()
+				                   + "; writing it with Java serialization");
+			}
+
+			StringBuilder sb = new StringBuilder();
+			sb.append(serial == null ? 0 : serial.getSerialVersionUID());
+			if (!works) {
+				sb.append(" serialized");
+			}
+			for (Field f : fields) {
+				sb.append(' ').append(f.getName()).append(':').append(f.getType().getName());
+			}
+			signature = sb.toString();
+		}
+	}
+
+	private static final ClassValue<Layout> LAYOUTS = new ClassValue<Layout>() {
+		protected Layout computeValue(Class<?> type) {
+			return new Layout(type);
+		}
+	};
+
+	private static final Comparator<Field> BY_NAME = new Comparator<Field>() {
+		public int compare(Field a, Field b) {
+			return a.getName().compareTo(b.getName());
+		}
+	};
+
+	// how whole signals are written when their class can't be instantiated
+	private static final ValueType SERIAL = new ValueType(Signal.class);
+
+	private final Map<Class<?>, Integer> tagsByClass = new HashMap<Class<?>, Integer>();
+	private volatile Layout[] tags = new Layout[0];
+
+	// encoder state for the current round: the last location written, which
+	// the next one is coded against, the signals written so far, and the
+	// stream shared by its serialized values, if it has any
+	private int lastX, lastY;
+	private final Output body = new Output();
+	private final ByteArrayOutputStream objectBytes = new ByteArrayOutputStream();
+	private ObjectOutputStream objects = null;
+
+	/**
+	 * Decoder state for one round.
+	 */
+	private static final class RoundReader {
+		int lastX, lastY;
+		// the round's object stream, which is only opened once needed
+		private final ByteBuffer objectBytes;
+		private ObjectInputStream objects = null;
+
+		RoundReader(ByteBuffer objectBytes) {
+			this.objectBytes = objectBytes;
+		}
+
+		Object readObject() {
+			try {
+				if (objects == null) {
+					objects = new ObjectInputStream(new ByteBufferInput(objectBytes));
+				}
+				return objects.readObject();
+			}
+			catch (IOException | ClassNotFoundException e) {
+				throw new IllegalStateException("Can't deserialize field value", e);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of signal classes that have been assigned a tag
+	 */
+	public int getTagCount() {
+		return tags.length;
+	}
+
+	/**
+	 * @param tag a tag previously assigned by this codec
+	 * @return the name of the signal class with that tag
+	 */
+	public String getTagClassName(int tag) {
+		return tags[tag].type.getName();
+	}
+
+	/**
+	 * @param tag a tag previously assigned by this codec
+	 * @return a description of how signals with that tag are encoded: the
+	 * class's serialVersionUID and the name and type of each field in layout
+	 * order.  Persisted streams store it next to the class name so that a
+	 * reader with a different version of the class can refuse the stream.
+	 */
+	public String getTagSignature(int tag) {
+		return tags[tag].signature;
+	}
+
+	/**
+	 * Assigns the next tag to the named class.  Readers of a persisted stream
+	 * use this to replay the tag assignments of the codec that wrote it.
+	 *
+	 * @param className the fully qualified name of a signal class
+	 * @param signature the signature the writer gave for the class
+	 * @throws ClassNotFoundException if the class can't be loaded
+	 * @throws InvalidClassException if the class is encoded differently than
+	 * the signature describes
+	 */
+	public synchronized void defineTag(String className, String signature)
+		throws ClassNotFoundException, InvalidClassException {
+		Layout layout = LAYOUTS.get(Class.forName(className));
+		if (!layout.signature.equals(signature)) {
+			throw new InvalidClassException(className, "written as " + signature
+			                                + " but read as " + layout.signature);
+		}
+		tagFor(layout.type);
+	}
+
+	private synchronized int tagFor(Class<?> type) {
+		Integer tag = tagsByClass.get(type);
+		if (tag == null) {
+			Layout[] current = tags;
+			tag = current.length;
+			Layout[] grown = Arrays.copyOf(current, current.length + 1);
+			grown[current.length] = LAYOUTS.get(type);
+			tagsByClass.put(type, tag);
+			tags = grown;
+		}
+		return tag;
+	}
+
+	/**
+	 * Writes a round's worth of signals.
+	 */
+	public void writeSignals(Signal[] signals, Output out) {
+		lastX = lastY = 0;
+		body.reset();
+		objectBytes.reset();
+		objects = null;
+		for (Signal s : signals) {
+			writeSignal(s, body);
+		}
+		out.writeVarInt(signals.length);
+		if (objects == null) {
+			out.writeVarInt(0);
+		}
+		else {
+			try {
+				objects.close();
+			}
+			catch (IOException e) {
+				throw new IllegalStateException("Can't serialize field values", e);
+			}
+			byte[] bytes = objectBytes.toByteArray();
+			out.writeVarInt(bytes.length);
+			out.write(bytes, 0, bytes.length);
+			objects = null;
+		}
+		out.write(body.array(), 0, body.size());
+	}
+
+	/**
+	 * Reads back an array written by {@link #writeSignals}.
+	 */
+	public Signal[] readSignals(ByteBuffer in) {
+		Signal[] signals = new Signal[readVarInt(in)];
+		int objectsLength = readVarInt(in);
+		ByteBuffer objectBytes = null;
+		if (objectsLength > 0) {
+			objectBytes = in.slice();
+			objectBytes.limit(objectsLength);
+			in.position(in.position() + objectsLength);
+		}
+		RoundReader reader = new RoundReader(objectBytes);
+		for (int i = 0; i < signals.length; i++) {
+			signals[i] = readSignal(in, reader);
+		}
+		return signals;
+	}
+
+	private void writeSignal(Signal s, Output out) {
+		int tag = tagFor(s.getClass());
+		Layout layout = tags[tag];
+		out.writeVarInt(tag);
+		if (!layout.instantiable) {
+			writeValue(SERIAL, s, out);
+			return;
+		}
+		try {
+			for (int i = 0; i < layout.fields.length; i++) {
+				Field f = layout.fields[i];
+				switch (layout.types[i].kind) {
+				case K_BOOLEAN: out.writeByte(f.getBoolean(s) ? 1 : 0); break;
+				case K_BYTE: out.writeByte(f.getByte(s)); break;
+				case K_SHORT: out.writeVarInt(f.getShort(s)); break;
+				case K_CHAR: out.writeVarInt(f.getChar(s)); break;
+				case K_INT: out.writeVarInt(f.getInt(s)); break;
+				case K_LONG: out.writeVarLong(f.getLong(s)); break;
+				case K_FLOAT: out.writeFloat(f.getFloat(s)); break;
+				case K_DOUBLE: out.writeDouble(f.getDouble(s)); break;
+				default: writeValue(layout.types[i], f.get(s), out);
+				}
+			}
+		}
+		catch (IllegalAccessException e) {
+			throw new IllegalStateException("Can't encode " + s.getClass().getName(), e);
+		}
+	}
+
+	private Signal readSignal(ByteBuffer in, RoundReader reader) {
+		Layout layout = tags[readVarInt(in)];
+		if (!layout.instantiable) {
+			return (Signal) readValue(SERIAL, in, reader);
+		}
+		try {
+			Signal s = (Signal) (layout.constructor != null ? layout.constructor.newInstance()
+			                     : Instantiator.get().newInstance(layout));
+			for (int i = 0; i < layout.fields.length; i++) {
+				Field f = layout.fields[i];
+				switch (layout.types[i].kind) {
+				case K_BOOLEAN: f.setBoolean(s, in.get() != 0); break;
+				case K_BYTE: f.setByte(s, in.get()); break;
+				case K_SHORT: f.setShort(s, (short) readVarInt(in)); break;
+				case K_CHAR: f.setChar(s, (char) readVarInt(in)); break;
+				case K_INT: f.setInt(s, readVarInt(in)); break;
+				case K_LONG: f.setLong(s, readVarLong(in)); break;
+				case K_FLOAT: f.setFloat(s, in.getFloat()); break;
+				case K_DOUBLE: f.setDouble(s, in.getDouble()); break;
+				default: f.set(s, readValue(layout.types[i], in, reader));
+				}
+			}
+			return s;
+		}
+		catch (ReflectiveOperationException | IOException e) {
+			throw new IllegalStateException("Can't decode " + layout.type.getName(), e);
+		}
+	}
+
+	private void writeValue(ValueType t, Object v, Output out) {
+		switch (t.kind) {
+		case K_BOOLEAN: out.writeByte((Boolean) v ? 1 : 0); return;
+		case K_BYTE: out.writeByte((Byte) v); return;
+		case K_SHORT: out.writeVarInt((Short) v); return;
+		case K_CHAR: out.writeVarInt((Character) v); return;
+		case K_INT: out.writeVarInt((Integer) v); return;
+		case K_LONG: out.writeVarLong((Long) v); return;
+		case K_FLOAT: out.writeFloat((Float) v); return;
+		case K_DOUBLE: out.writeDouble((Double) v); return;
+		}
+		// reference kinds: a leading 0 means null
+		if (v == null) {
+			out.writeVarInt(0);
+			return;
+		}
+		switch (t.kind) {
+		case K_STRING: {
+			byte[] bytes = ((String) v).getBytes(UTF8);
+			out.writeVarInt(bytes.length + 1);
+			out.write(bytes, 0, bytes.length);
+			return;
+		}
+		case K_ENUM:
+			out.writeVarInt(((Enum<?>) v).ordinal() + 1);
+			return;
+		case K_LOCATION: {
+			MapLocation loc = (MapLocation) v;
+			out.writeVarInt(1);
+			out.writeVarInt(loc.x - lastX);
+			out.writeVarInt(loc.y - lastY);
+			lastX = loc.x;
+			lastY = loc.y;
+			return;
+		}
+		case K_ARRAY:
+			writeArray(t.component, v, out);
+			return;
+		default:
+			out.writeVarInt(1);
+			serialize(v);
+		}
+	}
+
+	private void writeArray(ValueType c, Object array, Output out) {
+		int n = Array.getLength(array);
+		out.writeVarInt(n + 1);
+		switch (c.kind) {
+		case K_INT: {
+			int[] a = (int[]) array;
+			for (int i = 0; i < n; i++) out.writeVarInt(a[i]);
+			return;
+		}
+		case K_DOUBLE: {
+			double[] a = (double[]) array;
+			for (int i = 0; i < n; i++) out.writeDouble(a[i]);
+			return;
+		}
+		case K_LONG: {
+			long[] a = (long[]) array;
+			for (int i = 0; i < n; i++) out.writeVarLong(a[i]);
+			return;
+		}
+		case K_BYTE: {
+			byte[] a = (byte[]) array;
+			out.write(a, 0, n);
+			return;
+		}
+		case K_BOOLEAN: {
+			boolean[] a = (boolean[]) array;
+			for (int i = 0; i < n; i++) out.writeByte(a[i] ? 1 : 0);
+			return;
+		}
+		case K_SHORT: {
+			short[] a = (short[]) array;
+			for (int i = 0; i < n; i++) out.writeVarInt(a[i]);
+			return;
+		}
+		case K_CHAR: {
+			char[] a = (char[]) array;
+			for (int i = 0; i < n; i++) out.writeVarInt(a[i]);
+			return;
+		}
+		case K_FLOAT: {
+			float[] a = (float[]) array;
+			for (int i = 0; i < n; i++) out.writeFloat(a[i]);
+			return;
+		}
+		default: {
+			// every other component type is a reference
+			Object[] a = (Object[]) array;
+			for (int i = 0; i < n; i++) writeValue(c, a[i], out);
+		}
+		}
+	}
+
+	private Object readValue(ValueType t, ByteBuffer in, RoundReader reader) {
+		switch (t.kind) {
+		case K_BOOLEAN: return in.get() != 0;
+		case K_BYTE: return in.get();
+		case K_SHORT: return (short) readVarInt(in);
+		case K_CHAR: return (char) readVarInt(in);
+		case K_INT: return readVarInt(in);
+		case K_LONG: return readVarLong(in);
+		case K_FLOAT: return in.getFloat();
+		case K_DOUBLE: return in.getDouble();
+		}
+		int head = readVarInt(in);
+		if (head == 0) {
+			return null;
+		}
+		switch (t.kind) {
+		case K_STRING: {
+			byte[] bytes = new byte[head - 1];
+			in.get(bytes);
+			return new String(bytes, UTF8);
+		}
+		case K_ENUM:
+			return t.constants[head - 1];
+		case K_LOCATION: {
+			reader.lastX += readVarInt(in);
+			reader.lastY += readVarInt(in);
+			return new MapLocation(reader.lastX, reader.lastY);
+		}
+		case K_ARRAY:
+			return readArray(t.component, head - 1, in, reader);
+		default:
+			return reader.readObject();
+		}
+	}
+
+	private Object readArray(ValueType c, int n, ByteBuffer in, RoundReader reader) {
+		switch (c.kind) {
+		case K_INT: {
+			int[] a = new int[n];
+			for (int i = 0; i < n; i++) a[i] = readVarInt(in);
+			return a;
+		}
+		case K_DOUBLE: {
+			double[] a = new double[n];
+			for (int i = 0; i < n; i++) a[i] = in.getDouble();
+			return a;
+		}
+		case K_LONG: {
+			long[] a = new long[n];
+			for (int i = 0; i < n; i++) a[i] = readVarLong(in);
+			return a;
+		}
+		case K_BYTE: {
+			byte[] a = new byte[n];
+			in.get(a);
+			return a;
+		}
+		case K_BOOLEAN: {
+			boolean[] a = new boolean[n];
+			for (int i = 0; i < n; i++) a[i] = in.get() != 0;
+			return a;
+		}
+		case K_SHORT: {
+			short[] a = new short[n];
+			for (int i = 0; i < n; i++) a[i] = (short) readVarInt(in);
+			return a;
+		}
+		case K_CHAR: {
+			char[] a = new char[n];
+			for (int i = 0; i < n; i++) a[i] = (char) readVarInt(in);
+			return a;
+		}
+		case K_FLOAT: {
+			float[] a = new float[n];
+			for (int i = 0; i < n; i++) a[i] = in.getFloat();
+			return a;
+		}
+		default: {
+			// every other component type is a reference, so the array can be
+			// filled in directly without boxing
+			Object[] a = (Object[]) Array.newInstance(c.type, n);
+			for (int i = 0; i < n; i++) a[i] = readValue(c, in, reader);
+			return a;
+		}
+		}
+	}
+
+	/**
+	 * Appends a value to the current round's object stream.
+	 */
+	private void serialize(Object v) {
+		try {
+			if (objects == null) {
+				objects = new ObjectOutputStream(objectBytes);
+			}
+			objects.writeObject(v);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Can't serialize " + v.getClass().getName(), e);
+		}
+	}
+
+	/**
+	 * Collects the fields Java serialization would write for the given class,
+	 * superclass fields first and each class's fields sorted by name.
+	 */
+	private static void collectFields(Class<?> type, List<Field> out) {
+		if (type == null || !Serializable.class.isAssignableFrom(type)) {
+			return;
+		}
+		collectFields(type.getSuperclass(), out);
+		Field[] declared = type.getDeclaredFields();
+		Arrays.sort(declared, BY_NAME);
+		for (Field f : declared) {
+			int mod = f.getModifiers();
+			if (!Modifier.isStatic(mod) && !Modifier.isTransient(mod)) {
+				out.add(f);
+			}
+		}
+	}
+
+	/**
+	 * @return a serialization stream fragment holding one object of the
+	 * given class, described as having no fields and no superclass
+	 */
+	private static byte[] template(Class<?> type, ObjectStreamClass serial) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(ObjectStreamConstants.TC_OBJECT);
+			out.writeByte(ObjectStreamConstants.TC_CLASSDESC);
+			out.writeUTF(type.getName());
+			out.writeLong(serial.getSerialVersionUID());
+			out.writeByte(ObjectStreamConstants.SC_SERIALIZABLE);
+			out.writeShort(0);
+			out.writeByte(ObjectStreamConstants.TC_ENDBLOCKDATA);
+			out.writeByte(ObjectStreamConstants.TC_NULL);
+			out.close();
+			return bytes.toByteArray();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Makes empty instances of signal classes that have no no-arg
+	 * constructor, the way deserialization would: only the no-arg
+	 * constructor of the first non-serializable superclass runs.
+	 *
+	 * It feeds a private ObjectInputStream a layout's template the first time
+	 * it sees the layout, and after that a back reference to the class
+	 * descriptor the template defined, which costs about as much as a
+	 * reflective constructor call.  The stream is reset every RESET_INTERVAL
+	 * objects, since until then it keeps every object it made alive.  A
+	 * stream is stateful, so each decoding thread has its own.
+	 */
+	private static final class Instantiator extends InputStream {
+		private static final int RESET_INTERVAL = 1024;
+
+		private static final ThreadLocal<Instantiator> INSTANCES = new ThreadLocal<Instantiator>();
+
+		private final ObjectInputStream stream;
+		// wire handles of the class descriptors defined since the last reset
+		private final Map<Layout, Integer> handles = new IdentityHashMap<Layout, Integer>();
+		private final byte[] reference = new byte[6];
+		private int nextHandle = ObjectStreamConstants.baseWireHandle;
+		private int sinceReset = 0;
+		private Layout expected = null;
+
+		// what the stream reads next
+		private byte[] data;
+		private int position = 0;
+
+		private Instantiator() throws IOException {
+			ByteArrayOutputStream header = new ByteArrayOutputStream();
+			new ObjectOutputStream(header).close();
+			data = header.toByteArray();
+			stream = new ObjectInputStream(this) {
+				protected Class<?> resolveClass(ObjectStreamClass desc)
+					throws IOException, ClassNotFoundException {
+					if (expected != null && expected.type.getName().equals(desc.getName())) {
+						return expected.type;
+					}
+					return super.resolveClass(desc);
+				}
+			};
+			reference[0] = ObjectStreamConstants.TC_OBJECT;
+			reference[1] = ObjectStreamConstants.TC_REFERENCE;
+		}
+
+		static Instantiator get() throws IOException {
+			Instantiator i = INSTANCES.get();
+			if (i == null) {
+				i = new Instantiator();
+				INSTANCES.set(i);
+			}
+			return i;
+		}
+
+		/**
+		 * @return whether instances can be made from the given template
+		 */
+		static boolean probe(Layout layout, byte[] template) {
+			try {
+				// a fresh stream, since the layout isn't published yet and a
+				// failure leaves the stream unusable
+				Instantiator i = new Instantiator();
+				i.feed(template);
+				i.expected = layout;
+				return layout.type.isInstance(i.stream.readObject());
+			}
+			catch (IOException | ClassNotFoundException | RuntimeException e) {
+				return false;
+			}
+		}
+
+		Object newInstance(Layout layout) throws IOException, ClassNotFoundException {
+			boolean reset = (sinceReset == RESET_INTERVAL);
+			if (reset) {
+				handles.clear();
+				nextHandle = ObjectStreamConstants.baseWireHandle;
+				sinceReset = 0;
+			}
+			Integer handle = handles.get(layout);
+			if (handle == null) {
+				handles.put(layout, nextHandle);
+				// the descriptor and then the object each take a handle
+				nextHandle += 2;
+				if (reset) {
+					byte[] definition = new byte[layout.template.length + 1];
+					definition[0] = ObjectStreamConstants.TC_RESET;
+					System.arraycopy(layout.template, 0, definition, 1, layout.template.length);
+					feed(definition);
+				}
+				else {
+					feed(layout.template);
+				}
+			}
+			else {
+				int h = handle;
+				reference[2] = (byte) (h >>> 24);
+				reference[3] = (byte) (h >>> 16);
+				reference[4] = (byte) (h >>> 8);
+				reference[5] = (byte) h;
+				nextHandle++;
+				feed(reference);
+			}
+			sinceReset++;
+			expected = layout;
+			try {
+				return stream.readObject();
+			}
+			catch (IOException | ClassNotFoundException | RuntimeException e) {
+				INSTANCES.remove();
+				throw e;
+			}
+		}
+
+		private void feed(byte[] bytes) {
+			data = bytes;
+			position = 0;
+		}
+
+		public int read() {
+			return (position < data.length ? data[position++] & 0xFF : -1);
+		}
+
+		public int read(byte[] b, int off, int len) {
+			if (position >= data.length) {
+				return -1;
+			}
+			int n = Math.min(len, data.length - position);
+			System.arraycopy(data, position, b, off, n);
+			position += n;
+			return n;
+		}
+	}
+
+	/**
+	 * Reads a ByteBuffer, which may be direct, as a stream.
+	 */
+	private static final class ByteBufferInput extends InputStream {
+		private final ByteBuffer buf;
+
+		ByteBufferInput(ByteBuffer buf) {
+			this.buf = buf;
+		}
+
+		public int read() {
+			return (buf.hasRemaining() ? buf.get() & 0xFF : -1);
+		}
+
+		public int read(byte[] b, int off, int len) {
+			if (!buf.hasRemaining()) {
+				return -1;
+			}
+			int n = Math.min(len, buf.remaining());
+			buf.get(b, off, n);
+			return n;
+		}
+	}
+
+	public static int readVarInt(ByteBuffer in) {
+		int raw = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = in.get();
+			raw |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return (raw >>> 1) ^ -(raw & 1);
+	}
+
+	public static long readVarLong(ByteBuffer in) {
+		long raw = 0;
+		int shift = 0;
+		long b;
+		do {
+			b = in.get();
+			raw |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return (raw >>> 1) ^ -(raw & 1);
+	}
+
+	/**
+	 * A growable byte buffer the codec writes into.
+	 */
+	public static final class Output {
+		private byte[] buf;
+		private int size;
+
+		public Output() {
+			this(256);
+		}
+
+		public Output(int capacity) {
+			buf = new byte[capacity];
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public byte[] array() {
+			return buf;
+		}
+
+		public void reset() {
+			size = 0;
+		}
+
+		private void ensure(int extra) {
+			if (size + extra > buf.length) {
+				buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+			}
+		}
+
+		public void writeByte(int b) {
+			ensure(1);
+			buf[size++] = (byte) b;
+		}
+
+		public void write(byte[] b, int off, int len) {
+			ensure(len);
+			System.arraycopy(b, off, buf, size, len);
+			size += len;
+		}
+
+		public void writeVarInt(int v) {
+			ensure(5);
+			int raw = (v << 1) ^ (v >> 31);
+			while ((raw & ~0x7F) != 0) {
+				buf[size++] = (byte) ((raw & 0x7F) | 0x80);
+				raw >>>= 7;
+			}
+			buf[size++] = (byte) raw;
+		}
+
+		public void writeVarLong(long v) {
+			ensure(10);
+			long raw = (v << 1) ^ (v >> 63);
+			while ((raw & ~0x7FL) != 0) {
+				buf[size++] = (byte) ((raw & 0x7F) | 0x80);
+				raw >>>= 7;
+			}
+			buf[size++] = (byte) raw;
+		}
+
+		public void writeInt(int v) {
+			ensure(4);
+			buf[size++] = (byte) (v >>> 24);
+			buf[size++] = (byte) (v >>> 16);
+			buf[size++] = (byte) (v >>> 8);
+			buf[size++] = (byte) v;
+		}
+
+		public void writeLong(long v) {
+			writeInt((int) (v >>> 32));
+			writeInt((int) v);
+		}
+
+		public void writeFloat(float v) {
+			writeInt(Float.floatToRawIntBits(v));
+		}
+
+		public void writeDouble(double v) {
+			writeLong(Double.doubleToRawLongBits(v));
+		}
+	}
+}
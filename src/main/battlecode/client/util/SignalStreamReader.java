@@ -0,0 +1,130 @@
+package battlecode.client.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import battlecode.serial.RoundDelta;
+import battlecode.serial.RoundStats;
+
+/**
+ * Reads a match stream written by a {@link SignalStreamWriter}.
+ *
+ * Each record is read into one reused buffer and decoded from there, so the
+ * only allocations for a round are the resulting RoundDelta and its signals.
+ */
+public final class SignalStreamReader {
+
+	private final DataInputStream in;
+	private final SignalCodec codec = new SignalCodec();
+	private byte[] buf = new byte[1 << 12];
+	private ByteBuffer wrapped = ByteBuffer.wrap(buf);
+
+	/**
+	 * @return whether the given stream header starts a binary signal stream
+	 */
+	public static boolean isSignalStream(byte[] header) {
+		return header.length >= 4
+			&& ((header[0] & 0xFF) << 24 | (header[1] & 0xFF) << 16
+			    | (header[2] & 0xFF) << 8 | (header[3] & 0xFF)) == SignalStreamWriter.MAGIC;
+	}
+
+	public SignalStreamReader(InputStream stream) throws IOException {
+		in = new DataInputStream(stream);
+		if (in.readInt() != SignalStreamWriter.MAGIC) {
+			throw new IOException("Not a binary signal stream");
+		}
+		int version = in.readInt();
+		if (version != SignalStreamWriter.VERSION) {
+			throw new IOException("Unsupported signal stream version " + version);
+		}
+	}
+
+	/**
+	 * @return the next object of the match stream
+	 * @throws EOFException at the end of the stream
+	 */
+	public Object readObject() throws IOException {
+		while (true) {
+			int kind = in.read();
+			switch (kind) {
+			case -1:
+				throw new EOFException();
+			case SignalStreamWriter.RECORD_DEFINE:
+				try {
+					String className = in.readUTF();
+					codec.defineTag(className, in.readUTF());
+				}
+				catch (ClassNotFoundException e) {
+					throw new IOException("Unknown signal class", e);
+				}
+				break;
+			case SignalStreamWriter.RECORD_ROUND:
+				return new RoundDelta(codec.readSignals(readRecord()));
+			case SignalStreamWriter.RECORD_SIGNALS:
+				return codec.readSignals(readRecord());
+			case SignalStreamWriter.RECORD_STATS: {
+				double[] points = readDoubles();
+				return new RoundStats(points, readDoubles());
+			}
+			case SignalStreamWriter.RECORD_OBJECT: {
+				ByteBuffer record = readRecord();
+				try {
+					return new ObjectInputStream(new ByteArrayInputStream(
+						buf, 0, record.limit())).readObject();
+				}
+				catch (ClassNotFoundException e) {
+					throw new IOException("Unknown class in signal stream", e);
+				}
+			}
+			default:
+				throw new IOException("Corrupt signal stream: record kind " + kind);
+			}
+		}
+	}
+
+	private ByteBuffer readRecord() throws IOException {
+		int length = readVarInt();
+		if (length > buf.length) {
+			buf = Arrays.copyOf(buf, Math.max(length, 2 * buf.length));
+			wrapped = ByteBuffer.wrap(buf);
+		}
+		in.readFully(buf, 0, length);
+		wrapped.clear();
+		wrapped.limit(length);
+		return wrapped;
+	}
+
+	private double[] readDoubles() throws IOException {
+		int n = readVarInt();
+		if (n < 0) {
+			return null;
+		}
+		double[] values = new double[n];
+		for (int i = 0; i < n; i++) {
+			values[i] = in.readDouble();
+		}
+		return values;
+	}
+
+	private int readVarInt() throws IOException {
+		int raw = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = in.readUnsignedByte();
+			raw |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return (raw >>> 1) ^ -(raw & 1);
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,121 @@
+package battlecode.client.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+import battlecode.engine.signal.Signal;
+import battlecode.serial.RoundDelta;
+import battlecode.serial.RoundStats;
+
+/**
+ * Writes a match stream in the binary signal stream format, a compact
+ * alternative to a stream of serialized objects that StreamClientProxy reads
+ * just the same.
+ *
+ * <pre>
+ * stream  = MAGIC VERSION record*
+ * record  = DEFINE className:UTF signature:UTF
+ *         | ROUND length:varint signals
+ *         | SIGNALS length:varint signals
+ *         | STATS points gatheredPoints
+ *         | OBJECT length:varint serializedObject
+ * </pre>
+ *
+ * Signals are written with a {@link SignalCodec}; a DEFINE record assigns
+ * the next tag to a signal class just before the first record that uses it,
+ * and records the codec's signature for the class so that a reader whose
+ * version of the class has different fields rejects the stream.
+ * Arrays of doubles are a varint length followed by the raw values.
+ *
+ * @see SignalStreamReader
+ */
+public final class SignalStreamWriter implements Closeable {
+
+	public static final int MAGIC = 0x42435353; // "BCSS"
+	public static final int VERSION = 1;
+
+	static final int RECORD_DEFINE = 0;
+	static final int RECORD_ROUND = 1;
+	static final int RECORD_SIGNALS = 2;
+	static final int RECORD_STATS = 3;
+	static final int RECORD_OBJECT = 4;
+
+	private final DataOutputStream out;
+	private final SignalCodec codec = new SignalCodec();
+	private final SignalCodec.Output record = new SignalCodec.Output(1 << 12);
+	private final SignalCodec.Output signals = new SignalCodec.Output(1 << 12);
+	private final ByteArrayOutputStream objectBytes = new ByteArrayOutputStream();
+	private int definedTags = 0;
+
+	public SignalStreamWriter(OutputStream stream) throws IOException {
+		out = new DataOutputStream(stream);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+	}
+
+	/**
+	 * Appends the next object of the match stream.
+	 */
+	public void write(Object o) throws IOException {
+		record.reset();
+		if (o instanceof RoundDelta) {
+			writeSignals(RECORD_ROUND, ((RoundDelta) o).getSignals());
+		}
+		else if (o instanceof Signal[]) {
+			writeSignals(RECORD_SIGNALS, (Signal[]) o);
+		}
+		else if (o instanceof RoundStats) {
+			RoundStats stats = (RoundStats) o;
+			record.writeByte(RECORD_STATS);
+			writeDoubles(stats.getPoints());
+			writeDoubles(stats.getGatheredPoints());
+		}
+		else {
+			objectBytes.reset();
+			ObjectOutputStream oos = new ObjectOutputStream(objectBytes);
+			oos.writeObject(o);
+			oos.close();
+			record.writeByte(RECORD_OBJECT);
+			record.writeVarInt(objectBytes.size());
+			record.write(objectBytes.toByteArray(), 0, objectBytes.size());
+		}
+		out.write(record.array(), 0, record.size());
+	}
+
+	private void writeSignals(int kind, Signal[] round) throws IOException {
+		signals.reset();
+		codec.writeSignals(round, signals);
+		// the round may have introduced new signal classes
+		for (; definedTags < codec.getTagCount(); definedTags++) {
+			out.writeByte(RECORD_DEFINE);
+			out.writeUTF(codec.getTagClassName(definedTags));
+			out.writeUTF(codec.getTagSignature(definedTags));
+		}
+		record.writeByte(kind);
+		record.writeVarInt(signals.size());
+		record.write(signals.array(), 0, signals.size());
+	}
+
+	private void writeDoubles(double[] values) {
+		if (values == null) {
+			record.writeVarInt(-1);
+			return;
+		}
+		record.writeVarInt(values.length);
+		for (double v : values) {
+			record.writeDouble(v);
+		}
+	}
+
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	public void close() throws IOException {
+		out.close();
+	}
+}
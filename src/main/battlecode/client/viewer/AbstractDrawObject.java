@@ -12,6 +12,7 @@ import static battlecode.client.viewer.AbstractAnimation.AnimationType.*;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.Iterator;
 import java.util.List;
@@ -28,6 +29,10 @@ public abstract class AbstractDrawObject<Animation extends AbstractAnimation> {
   static {
     int nhats = 0;
     File[] files = (new File("art/hats/")).listFiles();
+    // headless tools may run without the art directory
+    if (files == null) {
+        files = new File[0];
+    }
     for (int x = 0; x < files.length; ++x) {
         final String fname = files[x].getAbsolutePath();
         final String extension = fname.substring(fname.lastIndexOf(".") + 1, fname.length());
@@ -74,9 +79,9 @@ public abstract class AbstractDrawObject<Animation extends AbstractAnimation> {
       this(currentRound, copy.info.type, copy.info.team, copy.getID());
       loc = copy.loc;
     dir = copy.dir;
-    energon = copy.energon;
+    energon = copy.getEnergon();
     shields = copy.shields;
-    supplyLevel = copy.supplyLevel;
+    supplyLevel = copy.getSupplyLevel();
     xp = copy.xp;
     missileCount = copy.missileCount;
     flux = copy.flux;
@@ -91,8 +96,8 @@ public abstract class AbstractDrawObject<Animation extends AbstractAnimation> {
     regen = copy.regen;
 
     actions = (LinkedList<Action>)actions.clone();
-    attackDelay = copy.attackDelay;
-    movementDelay = copy.movementDelay;
+    attackDelay = copy.getAttackDelay();
+    movementDelay = copy.getMovementDelay();
     
     hats = copy.hats;
 
@@ -117,7 +122,10 @@ public abstract class AbstractDrawObject<Animation extends AbstractAnimation> {
   protected Direction dir;
   protected float drawX = 0, drawY = 0;
   protected int moving = 0;
-  protected double energon = 0;
+  // health, delays and supply are read and written through their accessors:
+  // while the robot belongs to a state they live in that state's columns,
+  // and these fields only hold them while it doesn't
+  private double energon = 0;
   protected double shields = 0;
   protected double flux = 0;
   protected double maxEnergon;
@@ -125,8 +133,8 @@ public abstract class AbstractDrawObject<Animation extends AbstractAnimation> {
   protected int broadcast = 0;
   protected long controlBits = 0;
     protected int bytecodesUsed = 0;
-  protected double attackDelay = 0;
-  protected double movementDelay = 0;
+  private double attackDelay = 0;
+  private double movementDelay = 0;
   protected final int visualBroadcastRadius = 2;
   protected boolean turnedOn = true;
   protected boolean loaded = false;
@@ -134,7 +142,9 @@ public abstract class AbstractDrawObject<Animation extends AbstractAnimation> {
   protected int robotID;
   protected Direction attackDir;
   protected boolean isSuiciding = false;
-  protected double supplyLevel = 0;
+  private double supplyLevel = 0;
+  RobotColumns columns = null;
+  int slot = -1;
   protected int missileCount = 0;
   protected int xp = 0;
   protected int buildDelay=0;
@@ -159,6 +169,81 @@ public abstract class AbstractDrawObject<Animation extends AbstractAnimation> {
   protected String[] indicatorStrings =
     new String[GameConstants.NUMBER_OF_INDICATOR_STRINGS];
 
+  /**
+   * Moves this robot's health, delays and supply into a slot of the given
+   * columns.
+   */
+  void attach(RobotColumns target) {
+    int newSlot = target.allocate();
+    target.health[newSlot] = getEnergon();
+    target.coreDelay[newSlot] = getMovementDelay();
+    target.weaponDelay[newSlot] = getAttackDelay();
+    target.supply[newSlot] = getSupplyLevel();
+    detach();
+    columns = target;
+    slot = newSlot;
+  }
+
+  /**
+   * Moves this robot's values out of its columns and back into its own
+   * fields, releasing its slot.
+   */
+  void detach() {
+    if (columns != null) {
+      energon = columns.health[slot];
+      movementDelay = columns.coreDelay[slot];
+      attackDelay = columns.weaponDelay[slot];
+      supplyLevel = columns.supply[slot];
+      columns.release(slot);
+      columns = null;
+      slot = -1;
+    }
+  }
+
+  // the last read-only copy taken of this object for a snapshot state, which
+  // later snapshots can share for as long as this object still matches it
+  private AbstractDrawObject<Animation> snapshot = null;
+
+  public AbstractDrawObject<Animation> getSnapshot() {
+    return snapshot;
+  }
+
+  public void setSnapshot(AbstractDrawObject<Animation> snapshot) {
+    this.snapshot = snapshot;
+  }
+
+  /**
+   * Decides whether a copy of this object taken now would be
+   * indistinguishable from an earlier copy.  Copies never carry actions, so
+   * only the copied fields matter; objects with running animations never
+   * match, since their animations are cloned per copy.
+   *
+   * @param copy an object previously copied from this one
+   */
+  public boolean matchesCopy(AbstractDrawObject<Animation> copy) {
+    return animations.isEmpty() && copy.animations.isEmpty()
+      && info.equals(copy.info)
+      && (loc == null ? copy.loc == null : loc.equals(copy.loc))
+      && dir == copy.dir
+      && getEnergon() == copy.getEnergon()
+      && shields == copy.shields
+      && getSupplyLevel() == copy.getSupplyLevel()
+      && xp == copy.xp
+      && missileCount == copy.missileCount
+      && flux == copy.flux
+      && moving == copy.moving
+      && broadcast == copy.broadcast
+      && controlBits == copy.controlBits
+      && bytecodesUsed == copy.bytecodesUsed
+      && turnedOn == copy.turnedOn
+      && loaded == copy.loaded
+      && regen == copy.regen
+      && getAttackDelay() == copy.getAttackDelay()
+      && getMovementDelay() == copy.getMovementDelay()
+      && hats.equals(copy.hats)
+      && Arrays.equals(indicatorStrings, copy.indicatorStrings);
+  }
+
   public void setSuiciding(boolean is) {
     isSuiciding = is;
   }
@@ -222,7 +307,7 @@ public abstract class AbstractDrawObject<Animation extends AbstractAnimation> {
   }
 
   public double getSupplyLevel() {
-    return supplyLevel;
+    return (columns == null ? supplyLevel : columns.supply[slot]);
   }
 
   public int getMissileCount() {
@@ -234,7 +319,7 @@ public abstract class AbstractDrawObject<Animation extends AbstractAnimation> {
   }
 
   public double getEnergon() {
-    return energon;
+    return (columns == null ? energon : columns.health[slot]);
   }
     
   public double getShields() {
@@ -258,11 +343,11 @@ public abstract class AbstractDrawObject<Animation extends AbstractAnimation> {
   }
 
   public double getAttackDelay(){
-      return attackDelay;
+      return (columns == null ? attackDelay : columns.weaponDelay[slot]);
   }
   
   public double getMovementDelay(){
-      return movementDelay;
+      return (columns == null ? movementDelay : columns.coreDelay[slot]);
   }
     
   public void load() {
@@ -291,7 +376,11 @@ public abstract class AbstractDrawObject<Animation extends AbstractAnimation> {
   }
 
   public void setSupplyLevel(double supplyLevel) {
-    this.supplyLevel = supplyLevel;
+    if (columns == null) {
+      this.supplyLevel = supplyLevel;
+    } else {
+      columns.supply[slot] = supplyLevel;
+    }
   }
 
   public void setMissileCount(int missileCount) {
@@ -299,7 +388,11 @@ public abstract class AbstractDrawObject<Animation extends AbstractAnimation> {
   }
 
   public void setEnergon(double energon) {
-    this.energon = energon;
+    if (columns == null) {
+      this.energon = energon;
+    } else {
+      columns.health[slot] = energon;
+    }
   }
     
   public void setShields(double shields) {
@@ -331,16 +424,27 @@ public abstract class AbstractDrawObject<Animation extends AbstractAnimation> {
   }
 
   public void setAttackDelay(double delay){
-      attackDelay = delay;
+      if (columns == null) {
+          attackDelay = delay;
+      } else {
+          columns.weaponDelay[slot] = delay;
+      }
   }
   
   public void setMovementDelay(double delay){
-      movementDelay = delay;
+      if (columns == null) {
+          movementDelay = delay;
+      } else {
+          columns.coreDelay[slot] = delay;
+      }
   }
 
   public void setRegen() { regen = 2; }
 	
   public void addHat(int hat) {
+    if (numHats == 0) {
+        return;
+    }
     hats += ""+(char)(((hat%numHats)+numHats)%numHats);
   }
 
@@ -391,11 +495,11 @@ public abstract class AbstractDrawObject<Animation extends AbstractAnimation> {
   }
   
   public void destroyUnit() {
-    energon = 0;
+    setEnergon(0);
     shields = 0;
     missileCount = 0;
     xp = 0;
-    supplyLevel = 0;
+    setSupplyLevel(0);
     animations.put(DEATH_EXPLOSION, createDeathExplosionAnim(false));
     animations.remove(ENERGON_TRANSFER);
     animations.remove(MINE);
@@ -444,7 +548,7 @@ public abstract class AbstractDrawObject<Animation extends AbstractAnimation> {
     } else {
       // still waiting perfection of delay system
       // float dist = .5f;
-	float dist = (float)Math.max(Math.min(moving * (movementDelay / info.type.movementDelay), 1), 0);
+	float dist = (float)Math.max(Math.min(moving * (getMovementDelay() / info.type.movementDelay), 1), 0);
       //System.out.println("moving: " + moving + "actionDelay: " + actionDelay + "total " + totalActionRounds);
       drawX = -dist * dir.dx;
       drawY = -dist * dir.dy;
@@ -6,6 +6,7 @@ import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.WritableRaster;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -13,12 +14,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import battlecode.client.util.IntObjectMap;
 import battlecode.client.viewer.render.RenderConfiguration;
 import battlecode.common.Direction;
 import battlecode.common.MapLocation;
 import battlecode.common.RobotInfo;
 import battlecode.common.RobotType;
 import battlecode.common.Team;
+import battlecode.engine.signal.Signal;
 import battlecode.serial.RoundStats;
 import battlecode.world.GameMap;
 import battlecode.world.signal.AttackSignal;
@@ -49,20 +52,43 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
   protected abstract DrawObject createDrawObject(RobotType type, Team team, int id);
 
   protected abstract DrawObject createDrawObject(DrawObject o);
-  protected Map<Integer, DrawObject> groundUnits;
-  protected Map<Integer, DrawObject> airUnits;
+  protected IntObjectMap<DrawObject> groundUnits;
+  protected IntObjectMap<DrawObject> airUnits;
   protected Map<Integer, FluxDepositState> fluxDeposits;
   protected Set<MapLocation> encampments;
     protected DrawableMapMemory mapMemoryImage;
   protected double[] teamHP = new double[2];
-  protected Map<Team, Double> teamSupplyLevels;
+  protected double[] teamSupplyLevels = new double[2];
+  // health, delays and supply of every robot in this state
+  private final RobotColumns robotColumns = new RobotColumns(64);
+  // where every robot in this state stands; built when first needed, and
+  // dropped by copies, which would rarely use it
+  private RobotGrid robotGrid = null;
   protected Map<Team, DrawObject> hqs;
   protected Map<Team, Map<Integer, DrawObject>> towers
   = new EnumMap<Team, Map<Integer, DrawObject>>(Team.class); // includes dead towers
   protected Map<Team, DrawObject> commanders;
   protected int [] coreIDs = new int [2];
   protected Map<MapLocation,Team> mineLocs = new HashMap<MapLocation, Team>();
-  protected Map<MapLocation, Double> locationOre = new HashMap<MapLocation, Double>();
+  private OreGrid locationOre = new OreGrid(0, 0);
+  // the initial ore of every cell, row by row from the map origin; it never
+  // changes, so every state of a match shares it
+  private double[] initialOre = new double[0];
+  // the ore density of a cell is its initial ore less its current ore.
+  // oreLayerSource is replaced whenever the densities change other than
+  // through a signal, and the cells changed by signals since the renderer
+  // last caught up are bounded by the oreDirty rectangle, in map-relative
+  // cells, empty when oreDirtyMaxX < oreDirtyMinX
+  protected Object oreLayerSource = new Object();
+  protected int oreDirtyMinX, oreDirtyMinY, oreDirtyMaxX = -1, oreDirtyMaxY = -1;
+  private double maxOreDensity = 0;
+  // how many cells are at maxOreDensity; when the last of them drops below
+  // it the map is rescanned the next time it is asked for
+  private int maxOreDensityCount = 0;
+  private boolean maxOreDensityStale = false;
+  // bumped whenever this state changes, so drawings of it can be kept
+  // until it does
+  private int modCount = 0;
   protected static MapLocation origin = null;
   protected GameMap gameMap;
   protected int currentRound;
@@ -78,37 +104,98 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
   // That might cause problems if you, say, enable antialisaing, though.
   // (This is both graphics and memory, but put it here because it cares about signals.)
   protected final static class DrawableMapMemory {
-	  private final int[] buffer;
-	  public final MapLocation origin;
-	  public final int width, height;
-	  
+	  // the map is split into 16x16 tiles, each stored as one int per row
+	  // holding two bits per cell: SEEN_BY_A and SEEN_BY_B
+	  private static final int TILE_SHIFT = 4;
+	  private static final int TILE_SIZE = 1 << TILE_SHIFT;
+	  private static final int TILE_MASK = TILE_SIZE - 1;
+	  // a row array plus its header
+	  private static final int TILE_BYTES = 4 * TILE_SIZE + 16;
+	  // every tile starts out as this one, which is never written
+	  private static final int[] EMPTY_TILE = new int[TILE_SIZE];
+
+	  private static final int SEEN_BY_A = 1;
+	  private static final int SEEN_BY_B = 2;
+
 	  private static final int NOT_SEEN = Color.BLACK.getRGB();
 	  private static final int SEEN_A   = new Color(255,0,0,20).getRGB();
 	  private static final int SEEN_B   = new Color(0,0,255,20).getRGB();
 	  private static final int SEEN_BOTH = new Color(0,0,0,0).getRGB();
-	  
+	  private static final int[] PALETTE = { NOT_SEEN, SEEN_A, SEEN_B, SEEN_BOTH };
+
+	  public final MapLocation origin;
+	  public final int width, height;
+	  private final int tilesX, tilesY;
+	  private final int[][] tiles;
+	  // whether each tile belongs to this memory alone; tiles that don't are
+	  // shared with copies and are replaced before their first change
+	  private final boolean[] owned;
+	  // bounds of the cells changed since the last blit, empty when
+	  // dirtyMaxX < dirtyMinX
+	  private int dirtyMinX, dirtyMinY, dirtyMaxX, dirtyMaxY;
+
 	  public DrawableMapMemory(final MapLocation origin, final int width, final int height) {
 		  this.width = width;
 		  this.height = height;
 		  this.origin = origin;
-		  buffer = new int[width*height];
-		  
-		  for (int i = 0; i < width*height; i++) {
-			  buffer[i] = NOT_SEEN;
-		  }
+		  tilesX = (width + TILE_MASK) >> TILE_SHIFT;
+		  tilesY = (height + TILE_MASK) >> TILE_SHIFT;
+		  tiles = new int[tilesX * tilesY][];
+		  owned = new boolean[tiles.length];
+		  Arrays.fill(tiles, EMPTY_TILE);
+		  clearDirty();
 	  }
-	  
+
 	  public DrawableMapMemory(final DrawableMapMemory source) {
 		  this.width = source.width;
 		  this.height = source.height;
 		  this.origin = source.origin;
-		  this.buffer = new int[width*height];
-		  
-		  for (int i = 0; i < width*height; i++) {
-			  buffer[i] = source.buffer[i];
+		  this.tilesX = source.tilesX;
+		  this.tilesY = source.tilesY;
+		  this.tiles = source.tiles.clone();
+		  this.owned = new boolean[tiles.length];
+		  Arrays.fill(source.owned, false);
+		  clearDirty();
+	  }
+
+	  private void clearDirty() {
+		  dirtyMinX = dirtyMinY = Integer.MAX_VALUE;
+		  dirtyMaxX = dirtyMaxY = -1;
+	  }
+
+	  /**
+	   * @return the bytes of tiles changed since this memory was last copied
+	   */
+	  public long getUnsharedBytes() {
+		  long bytes = 0;
+		  for (int i = 0; i < owned.length; i++) {
+			  if (owned[i]) {
+				  bytes += TILE_BYTES;
+			  }
 		  }
+		  return bytes;
 	  }
-	  
+
+	  /**
+	   * @return the bytes of every tile that has been written, shared or not
+	   */
+	  public long getTotalBytes() {
+		  long bytes = 8L * tiles.length;
+		  for (int i = 0; i < tiles.length; i++) {
+			  if (tiles[i] != EMPTY_TILE) {
+				  bytes += TILE_BYTES;
+			  }
+		  }
+		  return bytes;
+	  }
+
+	  /**
+	   * @return whether any cells have changed since the last blit
+	   */
+	  public boolean isDirty() {
+		  return dirtyMaxX >= dirtyMinX;
+	  }
+
 	  public boolean compatible(final BufferedImage targetImage) {
 		  return targetImage != null
 				  && targetImage.getWidth() == this.width
@@ -120,50 +207,118 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
 		  return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB); // Same color type as the array
 	  }
 	  
+	  /**
+	   * Writes the whole memory into a compatible image.
+	   */
 	  public void copyMemoryToImage(final BufferedImage image) {
-		  image.setRGB(
-				  0, 0, 					// Start at origin
-				  this.width, this.height, 	// Cover whole image
-				  this.buffer, 			 	// The data we're blitting
-				  0,						// No offset in array
-				  this.width				// Scansize (this seems redundant...)
-				  );
+		  blit(image, 0, 0, width - 1, height - 1);
+		  clearDirty();
+	  }
+
+	  /**
+	   * Writes the cells changed since the last blit into a compatible image,
+	   * which must already hold the rest of this memory.
+	   */
+	  public void copyChangesToImage(final BufferedImage image) {
+		  if (dirtyMaxX >= dirtyMinX) {
+			  blit(image, dirtyMinX, dirtyMinY, dirtyMaxX, dirtyMaxY);
+			  clearDirty();
+		  }
+	  }
+
+	  private void blit(final BufferedImage image, final int minX, final int minY,
+			  final int maxX, final int maxY) {
+		  // go through the raster rather than its backing array, which would
+		  // stop Java2D from keeping the image in video memory
+		  final WritableRaster raster = image.getRaster();
+		  final int[] argb = new int[maxX - minX + 1];
+		  for (int y = minY; y <= maxY; y++) {
+			  final int tileBase = (y >> TILE_SHIFT) * tilesX;
+			  final int row = y & TILE_MASK;
+			  for (int x = minX; x <= maxX; x++) {
+				  final int bits = tiles[tileBase + (x >> TILE_SHIFT)][row];
+				  argb[x - minX] = PALETTE[(bits >>> ((x & TILE_MASK) << 1)) & 3];
+			  }
+			  raster.setDataElements(minX, y, argb.length, 1, argb);
+		  }
+	  }
+
+	  private int[] writableTile(final int tile) {
+		  if (!owned[tile]) {
+			  tiles[tile] = tiles[tile].clone();
+			  owned[tile] = true;
+		  }
+		  return tiles[tile];
 	  }
 	  
-	  public void rememberLocation(final Team team, final MapLocation loc, final int rsq) {
-		  final int radius = (int) Math.sqrt(rsq);
-		  final int minXPos = loc.x - radius;
-		  final int maxXPos = loc.x + radius;
-		  final int minYPos = loc.y - radius;
-		  final int maxYPos = loc.y + radius;
-
-		  for (int x = minXPos; x <= maxXPos; x++) {
-			  for (int y = minYPos; y <= maxYPos; y++) {
-				  final int dx = x - loc.x;
-				  final int dy = y - loc.y;
-				  if (dx*dx + dy*dy <= rsq) {
-					  // We care about this location
-					  final int bufferX = x - origin.x;
-					  final int bufferY = y - origin.y;
-					  
-					  if (bufferX < 0 || bufferX >= width || bufferY < 0 || bufferY >= height) {
-						  // Out of bounds, skip it
-						  continue;
-					  }
-					  
-					  final int currentColor = buffer[bufferY*width + bufferX];
-					  if (currentColor == NOT_SEEN) {
-						  if (team == Team.A) {
-							  buffer[bufferY*width + bufferX] = SEEN_A;
-						  } else if (team == Team.B){
-							  buffer[bufferY*width + bufferX] = SEEN_B;
-						  }
-					  } else if (
-							  (currentColor == SEEN_A && team == Team.B) ||
-							  (currentColor == SEEN_B && team == Team.A)
-							  ) {
-						  buffer[bufferY*width + bufferX] = SEEN_BOTH;
+	  // spans[rsq][radius + dy] is the largest |dx| with dx*dx + dy*dy <= rsq
+	  private static volatile int[][] spans = new int[64][];
+
+	  private static int[] getSpans(final int rsq) {
+		  int[][] cache = spans;
+		  if (rsq < cache.length && cache[rsq] != null) {
+			  return cache[rsq];
+		  }
+		  synchronized (DrawableMapMemory.class) {
+			  cache = spans;
+			  if (rsq >= cache.length || cache[rsq] == null) {
+				  // readers may hold the published array, so fill in a copy
+				  // and publish that instead
+				  cache = Arrays.copyOf(cache, Math.max(rsq + 1, cache.length));
+				  final int radius = (int) Math.sqrt(rsq);
+				  final int[] halfWidths = new int[2 * radius + 1];
+				  int halfWidth = radius;
+				  for (int dy = 0; dy <= radius; dy++) {
+					  while (halfWidth * halfWidth + dy * dy > rsq) {
+						  halfWidth--;
 					  }
+					  halfWidths[radius + dy] = halfWidths[radius - dy] = halfWidth;
+				  }
+				  cache[rsq] = halfWidths;
+				  spans = cache;
+			  }
+			  return cache[rsq];
+		  }
+	  }
+
+	  // the bits of cells lo..hi of a tile row, for both teams
+	  private static int cellMask(final int lo, final int hi) {
+		  final int upTo = (hi == TILE_MASK ? -1 : (1 << ((hi + 1) << 1)) - 1);
+		  return upTo & ~((1 << (lo << 1)) - 1);
+	  }
+	  
+	  public void rememberLocation(final Team team, final MapLocation loc, final int rsq) {
+		  final int teamBits;
+		  if (team == Team.A) {
+			  teamBits = 0x55555555 * SEEN_BY_A;
+		  } else if (team == Team.B) {
+			  teamBits = 0x55555555 * SEEN_BY_B;
+		  } else {
+			  return;
+		  }
+		  final int[] halfWidths = getSpans(rsq);
+		  final int radius = halfWidths.length >> 1;
+		  final int centerX = loc.x - origin.x;
+		  final int centerY = loc.y - origin.y;
+		  final int minY = Math.max(centerY - radius, 0);
+		  final int maxY = Math.min(centerY + radius, height - 1);
+
+		  for (int y = minY; y <= maxY; y++) {
+			  final int halfWidth = halfWidths[y - centerY + radius];
+			  final int minX = Math.max(centerX - halfWidth, 0);
+			  final int maxX = Math.min(centerX + halfWidth, width - 1);
+			  final int tileBase = (y >> TILE_SHIFT) * tilesX;
+			  final int row = y & TILE_MASK;
+			  // one masked OR per tile the span crosses
+			  for (int x = minX; x <= maxX; x = (x | TILE_MASK) + 1) {
+				  final int tile = tileBase + (x >> TILE_SHIFT);
+				  final int mask = teamBits & cellMask(x & TILE_MASK, Math.min(x | TILE_MASK, maxX) & TILE_MASK);
+				  if ((tiles[tile][row] & mask) != mask) {
+					  writableTile(tile)[row] |= mask;
+					  dirtyMinX = Math.min(dirtyMinX, x);
+					  dirtyMaxX = Math.max(dirtyMaxX, Math.min(x | TILE_MASK, maxX));
+					  dirtyMinY = Math.min(dirtyMinY, y);
+					  dirtyMaxY = Math.max(dirtyMaxY, y);
 				  }
 			  }
 		  }
@@ -176,28 +331,27 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
   protected int [] teamStrength = new int[2];
   
   
-  protected Iterable<Map.Entry<Integer, DrawObject>> drawables =
-    new Iterable<Map.Entry<Integer, DrawObject>>() {
+  protected Iterable<DrawObject> drawables =
+    new Iterable<DrawObject>() {
 
-    public Iterator<Map.Entry<Integer, DrawObject>> iterator() {
+    public Iterator<DrawObject> iterator() {
       return new UnitIterator();
     }
   };
 
-  private class UnitIterator implements Iterator<Map.Entry<Integer, DrawObject>> {
+  private class UnitIterator implements Iterator<DrawObject> {
 
-    private Iterator<Map.Entry<Integer, DrawObject>> it =
-      groundUnits.entrySet().iterator();
+    private Iterator<DrawObject> it = groundUnits.iterator();
     private boolean ground = true;
 
     public boolean hasNext() {
       return it.hasNext() || (ground && !airUnits.isEmpty());
     }
 
-    public Map.Entry<Integer, DrawObject> next() {
+    public DrawObject next() {
       if (!it.hasNext() && ground) {
         ground = false;
-        it = airUnits.entrySet().iterator();
+        it = airUnits.iterator();
       }
       return it.next();
     }
@@ -238,7 +392,6 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
     towers.put(Team.B, new HashMap<Integer, DrawObject>());
     totalRobotTypeCount.put(Team.A, new EnumMap<RobotType, Integer>(RobotType.class));
     totalRobotTypeCount.put(Team.B, new EnumMap<RobotType, Integer>(RobotType.class));
-    teamSupplyLevels = new EnumMap<Team, Double>(Team.class);
     buildingArray.put(Team.A, new ArrayList<RobotType>());
     buildingArray.put(Team.B, new ArrayList<RobotType>());
     unitArray.put(Team.A, new ArrayList<RobotType>());
@@ -246,24 +399,45 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
   }
 
   protected synchronized void copyStateFrom(AbstractDrawState<DrawObject> src) {
+      copyStateFrom(src, false);
+  }
+
+  /**
+   * Makes this state a copy of src.  A snapshot is a state that will only
+   * ever be read or copied from, such as a keyframe, so it may share every
+   * robot that hasn't changed since the previous snapshot of src.  The ore
+   * map and fog of war are always shared copy-on-write.
+   */
+  protected synchronized void copyStateFrom(AbstractDrawState<DrawObject> src, boolean snapshot) {
       currentRound = src.currentRound;
+      modCount++;
+      snapshotBytes = (snapshot ? 0 : -1);
       
+      // robots that outlive this state (say, in an info panel) keep their
+      // values once their slots are reused
+      for (DrawObject obj : drawables) {
+        if (obj.columns == robotColumns) {
+          obj.detach();
+        }
+      }
+      robotColumns.clear();
+      robotGrid = null;
       groundUnits.clear();
       for(Map<Integer, DrawObject> towerMap : towers.values()) {
 	  for(Integer id : towerMap.keySet()) {
 	      towerMap.put(id, null);
 	  }
       }
-      for (Map.Entry<Integer, DrawObject> entry : src.groundUnits.entrySet()) {
-        DrawObject copy = createDrawObject(entry.getValue());
-        groundUnits.put(entry.getKey(), copy);
+      for (DrawObject obj : src.groundUnits) {
+        DrawObject copy = copyRobot(obj, snapshot);
+        groundUnits.put(obj.getID(), copy);
         tryAddHQ(copy);
 	tryAddTower(copy);
       }
       airUnits.clear();
-      for (Map.Entry<Integer, DrawObject> entry : src.airUnits.entrySet()) {
-        DrawObject copy = createDrawObject(entry.getValue());
-        airUnits.put(entry.getKey(), copy);
+      for (DrawObject obj : src.airUnits) {
+        DrawObject copy = copyRobot(obj, snapshot);
+        airUnits.put(obj.getID(), copy);
       }
 
       
@@ -271,8 +445,10 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
       mineLocs.clear();
       mineLocs.putAll(src.mineLocs);
         
-      locationOre.clear();
-      locationOre.putAll(src.locationOre);
+      if (snapshot) {
+        snapshotBytes += src.locationOre.getUnsharedBytes();
+      }
+      locationOre = new OreGrid(src.locationOre);
         
       fluxDeposits.clear();
       for (Map.Entry<Integer, FluxDepositState> entry : src.fluxDeposits.entrySet()) {
@@ -292,7 +468,13 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
 	
       if (src.gameMap != null) {
         gameMap = src.gameMap;
+        initialOre = src.initialOre;
       }
+      maxOreDensity = src.maxOreDensity;
+      maxOreDensityCount = src.maxOreDensityCount;
+      maxOreDensityStale = src.maxOreDensityStale;
+      oreLayerSource = new Object();
+      clearOreDirty();
 
       for (int x=0; x<teamResources.length; x++)
         teamResources[x] = src.teamResources[x];
@@ -308,9 +490,12 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
       totalRobotTypeCount.put(Team.A, new EnumMap<RobotType, Integer>(src.totalRobotTypeCount.get(Team.A)));
       totalRobotTypeCount.put(Team.B, new EnumMap<RobotType, Integer>(src.totalRobotTypeCount.get(Team.B)));
       
-      teamSupplyLevels.put(Team.A, src.teamSupplyLevels.get(Team.A));
-      teamSupplyLevels.put(Team.B, src.teamSupplyLevels.get(Team.B));
+      teamSupplyLevels[0] = src.teamSupplyLevels[0];
+      teamSupplyLevels[1] = src.teamSupplyLevels[1];
       
+      if (snapshot) {
+        snapshotBytes += src.mapMemoryImage.getUnsharedBytes();
+      }
       mapMemoryImage = new DrawableMapMemory(src.mapMemoryImage);
       buildingArray.put(Team.A, new ArrayList<RobotType>(src.buildingArray.get(Team.A)));
       buildingArray.put(Team.B, new ArrayList<RobotType>(src.buildingArray.get(Team.B)));
@@ -318,6 +503,62 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
       unitArray.put(Team.B, new ArrayList<RobotType>(src.unitArray.get(Team.B)));
     }
 
+  // rough per-entry heap costs, including map entries and boxing
+  private static final int ROBOT_BYTES = 512;
+  private static final int LINK_BYTES = 64;
+
+  // for a snapshot, the bytes it doesn't share with earlier snapshots;
+  // -1 for states that own everything
+  private long snapshotBytes = -1;
+
+  @SuppressWarnings("unchecked")
+  private DrawObject copyRobot(DrawObject obj, boolean snapshot) {
+    if (!snapshot) {
+      DrawObject copy = createDrawObject(obj);
+      copy.attach(robotColumns);
+      return copy;
+    }
+    DrawObject copy = (DrawObject) obj.getSnapshot();
+    if (copy == null || !obj.matchesCopy(copy)) {
+      copy = createDrawObject(obj);
+      copy.attach(robotColumns);
+      obj.setSnapshot(copy);
+      snapshotBytes += ROBOT_BYTES;
+    }
+    return copy;
+  }
+
+  @Override
+  public synchronized void apply(Signal signal) {
+    super.apply(signal);
+    modCount++;
+  }
+
+  /**
+   * @return a count that changes whenever this state does
+   */
+  public int getModCount() {
+    return modCount;
+  }
+
+  protected void stateChanged() {
+    modCount++;
+  }
+
+  @Override
+  public long getMemoryEstimate() {
+    if (snapshotBytes >= 0) {
+      return snapshotBytes + (long) links.size() * LINK_BYTES;
+    }
+    long size = (long) (groundUnits.size() + airUnits.size()) * ROBOT_BYTES
+      + locationOre.getTotalBytes()
+      + (long) links.size() * LINK_BYTES;
+    if (mapMemoryImage != null) {
+      size += mapMemoryImage.getTotalBytes();
+    }
+    return size;
+  }
+
   public DrawObject getHQ(Team t) {
     return hqs.get(t);
   }
@@ -334,14 +575,51 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
   	return teamStrength[t.ordinal()];
   }
 
-  public int[] getRobotCounts(Team t) {
-    // naive way for now...
-    int[] counts = new int[RobotType.values().length];
-    for (Map.Entry<Integer, DrawObject> e : drawables) {
-      if (e.getValue().getTeam() == t)
-        counts[e.getValue().getType().ordinal()]++;
+  public synchronized int[] getRobotCounts(Team t) {
+    return getRobotGrid().getCounts(t);
+  }
+
+  private RobotGrid getRobotGrid() {
+    if (robotGrid == null) {
+      robotGrid = new RobotGrid(origin, gameMap.getWidth(), gameMap.getHeight());
+      for (DrawObject obj : drawables) {
+        robotGrid.add(obj.getID(), obj.getLocation(), obj.getTeam(), obj.getType());
+      }
+    }
+    return robotGrid;
+  }
+
+  /**
+   * Adds the robots standing within a squared distance of a location to
+   * out, row by row.
+   *
+   * @return the number of robots added
+   */
+  public synchronized int getRobotsWithin(MapLocation center, int radiusSquared, List<? super DrawObject> out) {
+    RobotGrid grid = getRobotGrid();
+    int radius = (int) Math.sqrt(radiusSquared);
+    int added = 0;
+    for (int y = center.y - radius; y <= center.y + radius; y++) {
+      int dy = y - center.y;
+      for (int x = center.x - radius; x <= center.x + radius; x++) {
+        int dx = x - center.x;
+        if (dx * dx + dy * dy > radiusSquared) {
+          continue;
+        }
+        int n = grid.getCount(x, y);
+        for (int i = 0; i < n; i++) {
+          out.add(getRobot(grid.getID(x, y, i)));
+        }
+        added += n;
+      }
+    }
+    return added;
+  }
+
+  private void robotMoved(DrawObject obj, MapLocation from) {
+    if (robotGrid != null) {
+      robotGrid.move(obj.getID(), from, obj.getLocation());
     }
-    return counts;
   }
   
   public void incrementRobotTypeCount(Team team, RobotType type) {
@@ -393,16 +671,79 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
     return encampments;
   }
 
-  protected Iterable<Map.Entry<Integer, DrawObject>> getDrawableSet() {
+  protected Iterable<DrawObject> getDrawableSet() {
     return drawables;
   }
 
   protected double getOreAtLocation(MapLocation loc) {
-    if (locationOre.containsKey(loc)) {
-      return locationOre.get(loc);
-    } else {
-      return 0.0;
+    return locationOre.get(loc.x - origin.x, loc.y - origin.y);
+  }
+
+  /**
+   * @return the initial ore of a cell less its current ore, for a cell given
+   * relative to the map origin
+   */
+  protected double getOreDensity(int x, int y) {
+    if (x < 0 || y < 0 || x >= locationOre.width || y >= locationOre.height) {
+      return 0;
     }
+    return initialOre[y * locationOre.width + x] - locationOre.get(x, y);
+  }
+
+  /**
+   * @return the largest ore density on the map, or 0 if none is positive
+   */
+  protected double getMaxOreDensity() {
+    if (maxOreDensityStale) {
+      scanOreDensity();
+    }
+    return maxOreDensity;
+  }
+
+  private void scanOreDensity() {
+    maxOreDensity = 0;
+    maxOreDensityCount = 0;
+    for (int y = 0; y < gameMap.getHeight(); y++) {
+      for (int x = 0; x < gameMap.getWidth(); x++) {
+        double density = getOreDensity(x, y);
+        if (density > maxOreDensity) {
+          maxOreDensity = density;
+          maxOreDensityCount = 1;
+        }
+        else if (density == maxOreDensity) {
+          maxOreDensityCount++;
+        }
+      }
+    }
+    maxOreDensityStale = false;
+  }
+
+  private void oreDensityChanged(int x, int y, double before, double after) {
+    if (!maxOreDensityStale) {
+      if (after > maxOreDensity) {
+        maxOreDensity = after;
+        maxOreDensityCount = 1;
+      }
+      else if (after == maxOreDensity && before != maxOreDensity) {
+        maxOreDensityCount++;
+      }
+      else if (before == maxOreDensity && after < maxOreDensity
+               && --maxOreDensityCount == 0) {
+        maxOreDensityStale = true;
+      }
+    }
+    oreDirtyMinX = Math.min(oreDirtyMinX, x);
+    oreDirtyMinY = Math.min(oreDirtyMinY, y);
+    oreDirtyMaxX = Math.max(oreDirtyMaxX, x);
+    oreDirtyMaxY = Math.max(oreDirtyMaxY, y);
+  }
+
+  /**
+   * Marks the renderer as caught up with every ore change so far.
+   */
+  protected void clearOreDirty() {
+    oreDirtyMinX = oreDirtyMinY = Integer.MAX_VALUE;
+    oreDirtyMaxX = oreDirtyMaxY = -1;
   }
 
   protected DrawObject getRobot(int id) {
@@ -420,11 +761,21 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
       previous = airUnits.remove(id);
       assert previous != null : "Robot #" + id + " not found";
     }
+    if (previous != null) {
+      previous.detach();
+      if (robotGrid != null) {
+        robotGrid.remove(id, previous.getLocation(), previous.getTeam(), previous.getType());
+      }
+    }
   }
 
   protected void putRobot(int id, DrawObject unit) {
     DrawObject previous = groundUnits.put(id, unit);
     assert previous == null : "Robot #" + id + " already exists";
+    unit.attach(robotColumns);
+    if (robotGrid != null) {
+      robotGrid.add(id, unit.getLocation(), unit.getTeam(), unit.getType());
+    }
   }
 
   protected void tryAddHQ(DrawObject hq) {
@@ -445,6 +796,10 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
   }
 
 
+  public double getTeamSupplyLevel(Team t) {
+    return teamSupplyLevels[t == Team.A ? 0 : 1];
+  }
+
   public RoundStats getRoundStats() {
     return stats;
   }
@@ -457,6 +812,17 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
     gameMap = new GameMap(map);
     origin = gameMap.getMapOrigin();
     mapMemoryImage = new DrawableMapMemory(origin, map.getWidth(), map.getHeight());
+    robotGrid = null;
+    locationOre = new OreGrid(map.getWidth(), map.getHeight());
+    initialOre = new double[map.getWidth() * map.getHeight()];
+    for (int y = 0; y < map.getHeight(); y++) {
+      for (int x = 0; x < map.getWidth(); x++) {
+        initialOre[y * map.getWidth() + x] = gameMap.getInitialOre(new MapLocation(origin.x + x, origin.y + y));
+      }
+    }
+    oreLayerSource = new Object();
+    clearOreDirty();
+    scanOreDensity();
   }
 
   public GameMap getGameMap() {
@@ -469,12 +835,17 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
     }
 
   protected void postUpdateRound() {
-    for (Iterator<Map.Entry<Integer, DrawObject>> it = drawables.iterator();
+    modCount++;
+    for (Iterator<DrawObject> it = drawables.iterator();
          it.hasNext();) {
-      DrawObject obj = it.next().getValue();
+      DrawObject obj = it.next();
       obj.updateRound();
       if (!obj.isAlive()) {
 	  it.remove();
+	  obj.detach();
+	  if (robotGrid != null) {
+	      robotGrid.remove(obj.getID(), obj.getLocation(), obj.getTeam(), obj.getType());
+	  }
 	  if(obj.getType() == RobotType.TOWER) {
 	      towers.get(obj.getTeam()).put(obj.getID(), null);
 	  }
@@ -555,13 +926,17 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
   }
 
   public void visitMovementOverrideSignal(MovementOverrideSignal s) {
-    getRobot(s.getRobotID()).setLocation(s.getNewLoc());
+    DrawObject obj = getRobot(s.getRobotID());
+    MapLocation oldloc = obj.getLocation();
+    obj.setLocation(s.getNewLoc());
+    robotMoved(obj, oldloc);
   }
   
   public void visitMovementSignal(MovementSignal s) {
     DrawObject obj = getRobot(s.getRobotID());
     MapLocation oldloc = obj.loc;
     obj.setLocation(s.getNewLoc());
+    robotMoved(obj, oldloc);
     obj.setDirection(oldloc.directionTo(s.getNewLoc()));
     obj.setMoving(s.isMovingForward(), s.getDelay());
     
@@ -576,6 +951,7 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
     DrawObject obj = getRobot(s.getRobotID());
     MapLocation oldloc = obj.loc;
     obj.setLocation(s.getTargetLoc());
+    robotMoved(obj, oldloc);
     obj.setDirection(oldloc.directionTo(s.getTargetLoc()));
   }
 
@@ -638,13 +1014,17 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
         
   }
 
+  // HealthChangeSignal and RobotInfoSignal cover every robot every round, so
+  // they write straight into the state's columns
   public void visitHealthChange(HealthChangeSignal s){
     int[] robotIDs = s.getRobotIDs();
     double[] health = s.getHealth();
+    double[] healthColumn = robotColumns.health;
     for (int i = 0; i < robotIDs.length; i++) {
       DrawObject robot = getRobot(robotIDs[i]);
       if (robot != null) {
-          robot.setEnergon(health[i]);
+          assert robot.columns == robotColumns;
+          healthColumn[robot.slot] = health[i];
       }
     }
   }
@@ -654,6 +1034,9 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
     double[] coreDelays = s.getCoreDelays();
     double[] weaponDelays = s.getWeaponDelays();
     double[] supplyLevels = s.getSupplyLevels();
+    double[] coreDelayColumn = robotColumns.coreDelay;
+    double[] weaponDelayColumn = robotColumns.weaponDelay;
+    double[] supplyColumn = robotColumns.supply;
     
     double teamASupplies = 0;
     double teamBSupplies = 0;
@@ -661,9 +1044,11 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
     for (int i = 0; i < robotIDs.length; i++) {
       DrawObject robot = getRobot(robotIDs[i]);
       if (robot != null) {
-          robot.setMovementDelay(coreDelays[i]);
-          robot.setAttackDelay(weaponDelays[i]);
-          robot.setSupplyLevel(supplyLevels[i]);
+          assert robot.columns == robotColumns;
+          int slot = robot.slot;
+          coreDelayColumn[slot] = coreDelays[i];
+          weaponDelayColumn[slot] = weaponDelays[i];
+          supplyColumn[slot] = supplyLevels[i];
           
           if (robot.getTeam() == Team.A) {
         	  teamASupplies += supplyLevels[i];
@@ -672,8 +1057,8 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
           }
       }
     }
-    teamSupplyLevels.put(Team.A, teamASupplies);
-    teamSupplyLevels.put(Team.B, teamBSupplies);
+    teamSupplyLevels[0] = teamASupplies;
+    teamSupplyLevels[1] = teamBSupplies;
   }
 
   public void visitXPSignal(XPSignal s) {
@@ -685,7 +1070,14 @@ public abstract class AbstractDrawState<DrawObject extends AbstractDrawObject> e
   }
 
   public void visitLocationOreChangeSignal(LocationOreChangeSignal s) {
-    locationOre.put(s.getLocation(), s.getOre());
+    int x = s.getLocation().x - origin.x;
+    int y = s.getLocation().y - origin.y;
+    if (x < 0 || y < 0 || x >= locationOre.width || y >= locationOre.height) {
+      return;
+    }
+    double before = getOreDensity(x, y);
+    locationOre.set(x, y, s.getOre());
+    oreDensityChanged(x, y, before, getOreDensity(x, y));
   }
 }
 
@@ -0,0 +1,63 @@
+package battlecode.client.viewer;
+
+import java.util.Arrays;
+
+/**
+ * An append-only list for one writer thread and any number of readers.
+ *
+ * Elements live in fixed-size chunks that are never moved once allocated, and
+ * the writer publishes each append through a volatile size.  Readers never
+ * lock: any index below the size they observe is fully visible to them.
+ */
+final class AppendLog<E> {
+
+	private static final int CHUNK_SHIFT = 10;
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private volatile Object[][] chunks = new Object[16][];
+	private volatile int size = 0;
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Appends an element.  Must only be called from the writer thread.
+	 */
+	public void add(E element) {
+		int n = size;
+		int chunk = n >>> CHUNK_SHIFT;
+		Object[][] dir = chunks;
+		if (chunk == dir.length) {
+			dir = Arrays.copyOf(dir, dir.length * 2);
+			chunks = dir;
+		}
+		if (dir[chunk] == null) {
+			dir[chunk] = new Object[CHUNK_SIZE];
+		}
+		dir[chunk][n & CHUNK_MASK] = element;
+		size = n + 1;
+	}
+
+	/**
+	 * @return the element at the given index, or null if it hasn't been
+	 * published yet
+	 */
+	@SuppressWarnings("unchecked")
+	public E get(int index) {
+		if (index < 0 || index >= size) {
+			return null;
+		}
+		return (E) chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+	}
+
+	/**
+	 * Forgets every element.  Must only be called from the writer thread
+	 * before readers have been given any indices.
+	 */
+	public void clear() {
+		chunks = new Object[16][];
+		size = 0;
+	}
+}
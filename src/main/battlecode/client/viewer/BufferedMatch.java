@@ -7,6 +7,7 @@ import battlecode.client.*;
 import battlecode.serial.*;
 import battlecode.serial.notification.*;
 import battlecode.engine.signal.Signal;
+import battlecode.server.Config;
 import battlecode.world.GameMap;
 
 public final class BufferedMatch {
@@ -20,20 +21,30 @@ public final class BufferedMatch {
 	public String teamB = null;
 	private String[] mapNames = null;
 
-	private List<RoundDelta> deltas = new Vector<RoundDelta>();
-	private List<RoundStats> stats = new Vector<RoundStats>();
+	// heap a replayed match's rounds may take before they spill to disk
+	private static final long DEFAULT_SPILL_MB = 32;
+
+	private final RoundStore deltas;
+	private AppendLog<RoundStats> stats = new AppendLog<RoundStats>();
     private DominationFactor dominationFactor = null;
-	private List<Signal> currentBreak = null;
-	private boolean paused = false;
+	private volatile Break currentBreak = null;
+	private volatile boolean paused = false;
 
 	private List<MatchListener> matchListeners;
 	private List<MatchListener> matchPausedListeners;
 
 	private boolean earlyTermination = false;
 
+	// bumped whenever something a waiting reader cares about happens:
+	// a round or its stats arrives, a break starts or gains signals, or the
+	// match ends
+	private final Object changeLock = new Object();
+	private volatile int changeCount = 0;
+
 	public BufferedMatch(ClientProxy proxy) {
 		assert proxy != null;
 		this.proxy = proxy;
+		this.deltas = createRoundStore(!proxy.isDebuggingAvailable());
 
 		matchListeners = new LinkedList<MatchListener>();
 		matchPausedListeners = new LinkedList<MatchListener>();
@@ -41,6 +52,51 @@ public final class BufferedMatch {
 		(new Thread() { public void run() { readMatch(); } }).start();
 	}
 
+	/**
+	 * Once a replayed match's rounds take DEFAULT_SPILL_MB of heap, further
+	 * full blocks of them are spilled to a memory-mapped file; a live match
+	 * stays on the heap.  bc.client.spill-rounds overrides this with a size
+	 * in megabytes, or "off" to keep every round on the heap.
+	 * bc.client.round-cache sets how many decoded rounds are kept.
+	 */
+	private static RoundStore createRoundStore(boolean replay) {
+		Config cfg = Config.getGlobalConfig();
+		long spillThreshold = (replay ? DEFAULT_SPILL_MB << 20 : RoundStore.NEVER_SPILL);
+		int cacheSize = RoundStore.DEFAULT_CACHE_SIZE;
+		if (cfg != null) {
+			String value = cfg.get("bc.client.spill-rounds");
+			if (value != null && value.trim().equalsIgnoreCase("off")) {
+				spillThreshold = RoundStore.NEVER_SPILL;
+			}
+			else if (value != null) {
+				try {
+					spillThreshold = Math.max(0, Long.parseLong(value.trim())) << 20;
+				}
+				catch (NumberFormatException e) {
+					System.err.println("Ignoring bad value for bc.client.spill-rounds: " + value);
+				}
+			}
+			value = cfg.get("bc.client.round-cache");
+			if (value != null) {
+				try {
+					cacheSize = Math.max(1, Integer.parseInt(value.trim()));
+				}
+				catch (NumberFormatException e) {
+					System.err.println("Ignoring bad value for bc.client.round-cache: " + value);
+				}
+			}
+		}
+		return new RoundStore(spillThreshold, cacheSize);
+	}
+
+	/**
+	 * Lets go of the resources held for this match's rounds, such as their
+	 * spill file.  The rounds stay readable.
+	 */
+	public void release() {
+		deltas.close();
+	}
+
 	public MatchHeader getHeader() {
 		return header;
 	}
@@ -50,9 +106,7 @@ public final class BufferedMatch {
 	}
   
 	public RoundDelta getRound(int round) {
-		if(round < deltas.size())
-			return deltas.get(round);
-		return null;
+		return deltas.get(round);
 	}
 
 	public RoundStats getRoundStats(int round) {
@@ -60,12 +114,38 @@ public final class BufferedMatch {
 	}
 
 	public List<Signal> getDebugSignals(int round) {
-		if (deltas != null) {
-			synchronized(deltas) {
-				if (round == deltas.size()) return currentBreak;
+		Break b = currentBreak;
+		if (b != null && b.round == round) return b.signals;
+		return null;
+	}
+
+	/**
+	 * @return a counter that increases every time new rounds, stats, debug
+	 * signals, a pause or the end of the match arrive
+	 */
+	public int getChangeCount() {
+		return changeCount;
+	}
+
+	/**
+	 * Blocks until the change count differs from the given value.
+	 *
+	 * @param seenCount a value previously returned by getChangeCount
+	 * @throws InterruptedException if the waiting thread is interrupted
+	 */
+	public void awaitChange(int seenCount) throws InterruptedException {
+		synchronized(changeLock) {
+			while (changeCount == seenCount) {
+				changeLock.wait();
 			}
 		}
-		return null;
+	}
+
+	private void signalChange() {
+		synchronized(changeLock) {
+			changeCount++;
+			changeLock.notifyAll();
+		}
 	}
 
 	public MatchFooter getFooter() {
@@ -78,6 +158,7 @@ public final class BufferedMatch {
 
 	private void readMatch() {
 		Object obj;
+		long start = 0;
 		do {
 			try {
 				obj = proxy.readObject();
@@ -86,6 +167,9 @@ public final class BufferedMatch {
 				//System.err.println("Unexpected end of line at match header");
 				return;
 			}
+			if (start == 0) {
+				start = System.nanoTime();
+			}
 		} while (!(obj instanceof MatchHeader));
 		synchronized(this) {
 			header = (MatchHeader) obj;
@@ -101,6 +185,7 @@ public final class BufferedMatch {
 			}
 			catch (EOFException e) {
 				System.err.println("Unexpected end of line at round " + deltas.size());
+				signalChange();
 				return;
 			}
 			if (obj instanceof Notification) {
@@ -123,6 +208,9 @@ public final class BufferedMatch {
 			}
 			else if (obj instanceof MatchFooter) {
                 handleMatchFooter((MatchFooter) obj);
+				double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+				System.out.println("Buffered " + deltas.size() + " rounds at "
+				                   + Math.round(deltas.size() / seconds) + " rounds/sec");
 				break;
 			}
 		}
@@ -142,6 +230,7 @@ public final class BufferedMatch {
 			matchPausedListeners = null;
 		}
 		matchListeners = null;
+		signalChange();
 		System.out.println("Stop buffering match");
 	}
 
@@ -153,32 +242,34 @@ public final class BufferedMatch {
 				listener.breakReceived(this);
 			}
 		}
+		signalChange();
 	}
 
 	private void handleRoundDelta(RoundDelta roundDelta) {
 		assert roundDelta != null: "Null delta at round " + deltas.size();
 		paused = false;
-		if (currentBreak == null) {
+		Break b = currentBreak;
+		if (b == null) {
 			deltas.add(roundDelta);
 		}
 		else {
 			Signal[] signals = roundDelta.getSignals();
-			Signal[] merged = new Signal[currentBreak.size() + signals.length];
-			for (int i = 0; i < currentBreak.size(); i++) {
-				merged[i] = currentBreak.get(i);
+			Signal[] merged = new Signal[b.signals.size() + signals.length];
+			for (int i = 0; i < b.signals.size(); i++) {
+				merged[i] = b.signals.get(i);
 			}
 			for (int i = 0; i < signals.length; i++) {
-				merged[currentBreak.size() + i] = signals[i];
-			}
-			synchronized(deltas) {
-				currentBreak = null;
-				deltas.add(new RoundDelta(merged));
+				merged[b.signals.size() + i] = signals[i];
 			}
+			deltas.add(new RoundDelta(merged));
+			currentBreak = null;
 		}
+		signalChange();
 	}
 
 	private void handleRoundStats(RoundStats roundStats) {
 		stats.add(roundStats);
+		signalChange();
 	}
 
     // TODO: we could be doing more with these.
@@ -207,11 +298,29 @@ public final class BufferedMatch {
     }
 
 	private void handleSignals(Signal[] signals) {
-		if (currentBreak == null) {
-			currentBreak = new ArrayList<Signal>();
+		List<Signal> list = new ArrayList<Signal>();
+		if (currentBreak != null) {
+			list.addAll(currentBreak.signals);
 		}
 		for (int i = 0; i < signals.length; i++) {
-			currentBreak.add(signals[i]);
+			list.add(signals[i]);
+		}
+		currentBreak = new Break(deltas.size(), list);
+		signalChange();
+	}
+
+	/**
+	 * The signals received during a breakpoint, along with the round they
+	 * come before.  A break is never changed once published, so a reader
+	 * always sees a list together with its own round.
+	 */
+	private static final class Break {
+		final int round;
+		final List<Signal> signals;
+
+		Break(int round, List<Signal> signals) {
+			this.round = round;
+			this.signals = Collections.unmodifiableList(signals);
 		}
 	}
 
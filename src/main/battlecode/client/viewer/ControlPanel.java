@@ -247,7 +247,7 @@ public class ControlPanel extends JPanel
         GameStateTimeline gst = player.getTimeline();
         if (slider.getValueIsAdjusting() && !setSliderPrecise) {
             int round = slider.getValue();
-            gst.setRound(round - (round % gst.getRoundsPerKey()));
+            gst.setRound(gst.getKeyFrameRound(round));
         }
         setSliderPrecise = false;
         if (slider.getValue() > gst.getNumRounds()) {
@@ -26,5 +26,13 @@ public abstract class GameState extends AutoSignalHandler {
     protected abstract void preUpdateRound();
 	protected abstract void postUpdateRound();
 
+	/**
+	 * @return a rough estimate of the heap this state occupies in bytes, or 0
+	 * if unknown.  Used to keep keyframes within their memory budget.
+	 */
+	public long getMemoryEstimate() {
+		return 0;
+	}
+
 	//public abstract AbstractDrawObject getDrawObject(int id);
 }
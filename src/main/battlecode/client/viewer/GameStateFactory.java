@@ -6,6 +6,10 @@ public interface GameStateFactory<E extends GameState> {
 
   public abstract E createState(GameMap map);
 
+  /**
+   * Creates a copy of a state that will only be read or copied from, never
+   * updated, so it may share structure with earlier clones.
+   */
   public abstract E cloneState(E state);
 
   public abstract void copyState(E src, E dst);
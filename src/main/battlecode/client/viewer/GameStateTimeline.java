@@ -8,11 +8,14 @@ import java.util.*;
 public class GameStateTimeline<E extends GameState> extends Observable {
 
   private GameStateFactory<E> gsf;
-  private Vector<E> keyFrames;
-  private final int roundsPerKey;
+  private Vector<KeyFrame<E>> keyFrames;
+  private final KeyFramePolicy policy;
+  private volatile int roundsPerKey;
+  private long keyFrameBytes = 0;
 
 	protected BufferedMatch match;
-	private boolean active = false; // technically volatile, but we can be lenient
+	private volatile boolean active = false;
+	private volatile Thread builder = null;
 
 	protected E currentState = null;
 	protected int currentRound = -1;
@@ -28,17 +31,33 @@ public class GameStateTimeline<E extends GameState> extends Observable {
   private volatile long applyTime = 0;
   private volatile long numApplies = 0;
 
+	private static final class KeyFrame<E> {
+		final int round;
+		final E state;
+
+		KeyFrame(int round, E state) {
+			this.round = round;
+			this.state = state;
+		}
+	}
+
 	public GameStateTimeline(BufferedMatch match, GameStateFactory<E> gsf,
 	                         int rpk) {
+		this(match, gsf, KeyFramePolicy.fixed(rpk));
+	}
+
+	public GameStateTimeline(BufferedMatch match, GameStateFactory<E> gsf,
+	                         KeyFramePolicy policy) {
 		this.gsf = gsf;
-		this.roundsPerKey = rpk;
+		this.policy = policy;
+		this.roundsPerKey = policy.nextSpacing(0, 0, 0, 0, 0);
 		this.match = match;
 		match.addMatchListener(new MatchListener() {
 			public void headerReceived(BufferedMatch m) {
-				keyFrames = new Vector<E>(1 + m.getHeader().getMap().getMaxRounds() /
-				                              roundsPerKey);
+				keyFrames = new Vector<KeyFrame<E>>();
 				active = true;
-				(new Thread() { public void run() { createKeyFrames(); } }).start();
+				builder = new Thread() { public void run() { createKeyFrames(); } };
+				builder.start();
 			}
 		});
   }
@@ -49,14 +68,46 @@ public class GameStateTimeline<E extends GameState> extends Observable {
 		return match.isFinished() && roundsProcessed >= match.getRoundsAvailable();
 	}
 
+	/**
+	 * @return the spacing most recently chosen by the keyframe policy
+	 */
 	public int getRoundsPerKey() { return roundsPerKey; }
 
+	/**
+	 * @return the round of the latest keyframe at or before the given round
+	 */
+	public int getKeyFrameRound(int round) {
+		if (keyFrames == null || keyFrames.isEmpty()) {
+			return 0;
+		}
+		return keyFrames.get(findKeyFrame(round)).round;
+	}
+
+	private int findKeyFrame(int round) {
+		synchronized (keyFrames) {
+			int lo = 0, hi = keyFrames.size() - 1;
+			while (lo < hi) {
+				int mid = (lo + hi + 1) >>> 1;
+				if (keyFrames.get(mid).round <= round) {
+					lo = mid;
+				}
+				else {
+					hi = mid - 1;
+				}
+			}
+			return lo;
+		}
+	}
+
 	/**
 	 * Stops the creation of keyframes for this timeline and notifies all Observers.
 	 * Should only be used to dispose of the match viewer and player. 
 	 */
 	public void terminate() {
 		active = false;
+		if (builder != null) {
+			builder.interrupt();
+		}
 		setChanged();
 		notifyObservers();
 		deleteObservers();
@@ -65,9 +116,12 @@ public class GameStateTimeline<E extends GameState> extends Observable {
 	@SuppressWarnings("unchecked")
 	protected void createKeyFrames() {
 		E gs = gsf.createState((battlecode.world.GameMap)match.getHeader().getMap());
-		keyFrames.addElement(cloneState(gs));
+		int maxRounds = match.getHeader().getMap().getMaxRounds();
+		addKeyFrame(0, gs, maxRounds);
+		int nextKeyRound = roundsPerKey;
 		roundsProcessed = 0;
 		while (active) {
+			int seenChanges = match.getChangeCount();
 			int roundsAvailable = match.getRoundsAvailable();
 			if (roundsProcessed == roundsAvailable && match.isFinished()) {
 				break;
@@ -76,31 +130,52 @@ public class GameStateTimeline<E extends GameState> extends Observable {
 				RoundDelta delta = match.getRound(roundsProcessed);
 				assert delta != null: "Null delta after handling " + roundsProcessed + " rounds";
 				applyDelta(gs, delta, match.getRoundStats(roundsProcessed));
-				if ((roundsProcessed + 1) % roundsPerKey == 0) {
-					keyFrames.addElement(cloneState(gs));
+				if (roundsProcessed + 1 == nextKeyRound) {
+					addKeyFrame(nextKeyRound, gs, maxRounds);
+					nextKeyRound = (int) Math.min(Integer.MAX_VALUE,
+					                              (long) nextKeyRound + roundsPerKey);
 				}
 				roundsProcessed++;
 				synchronized (this) { debugSignals = null; }
 			}
+			if (roundsProcessed < roundsAvailable) {
+				continue;
+			}
 			appliedDebugSignals = 0;
 			debugSignals = match.getDebugSignals(roundsProcessed);
-			if (debugSignals != null) {
-				try {
-					while (roundsProcessed == match.getRoundsAvailable()) {
-						Thread.sleep(10);
+			try {
+				if (debugSignals != null) {
+					// the debug signals stay valid until the next round arrives
+					while (active && roundsProcessed == match.getRoundsAvailable()) {
+						int seen = match.getChangeCount();
+						if (roundsProcessed != match.getRoundsAvailable()) {
+							break;
+						}
+						match.awaitChange(seen);
 					}
 				}
-				catch (InterruptedException e) {}
-			}
-			else {
-				try {
-					Thread.sleep(10);
-				} catch (InterruptedException e) {
+				else {
+					match.awaitChange(seenChanges);
 				}
 			}
+			catch (InterruptedException e) {}
 		}
 	}
 
+	/**
+	 * Stores a copy of the state as the keyframe for the given round, then asks
+	 * the policy how far away the next one should be.
+	 */
+	private void addKeyFrame(int round, E gs, int maxRounds) {
+		E frame = cloneState(gs);
+		keyFrames.addElement(new KeyFrame<E>(round, frame));
+		long stateBytes = frame.getMemoryEstimate();
+		keyFrameBytes += stateBytes;
+		roundsPerKey = policy.nextSpacing(numApplies == 0 ? 0 : applyTime / numApplies,
+		                                  cloneTime / numClones, stateBytes,
+		                                  keyFrameBytes, maxRounds - round);
+	}
+
   private E cloneState(E gs) {
     long startTime = System.nanoTime();
     E clone = gsf.cloneState(gs);
@@ -142,7 +217,8 @@ public class GameStateTimeline<E extends GameState> extends Observable {
 	round == 0) {
       return true;
     }
-    int numDeltas = round - currentRound - (round % roundsPerKey);
+    // extra deltas we'd apply by continuing from here instead of the keyframe
+    int numDeltas = getKeyFrameRound(round) - currentRound;
     // suggest a copy if the extra delta applications would take more time
     return numDeltas * applyTime * numClones > cloneTime * numApplies;
   }
@@ -175,9 +251,9 @@ public class GameStateTimeline<E extends GameState> extends Observable {
 		}
 
 		if (isKeyFrameRequired(round)) {
-			int keyFrame = round / roundsPerKey;
-			gsf.copyState(keyFrames.get(keyFrame), currentState);
-			currentRound = keyFrame * roundsPerKey;
+			KeyFrame<E> keyFrame = keyFrames.get(findKeyFrame(round));
+			gsf.copyState(keyFrame.state, currentState);
+			currentRound = keyFrame.round;
 		}
 		else if (currentStateAlignedClone != null) { // realign currentState
 			gsf.copyState(currentStateAlignedClone, currentState);
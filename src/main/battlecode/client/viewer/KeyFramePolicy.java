@@ -0,0 +1,128 @@
+package battlecode.client.viewer;
+
+import battlecode.server.Config;
+
+/**
+ * Decides how many rounds apart a GameStateTimeline places its keyframes.
+ *
+ * Seeking to a round copies the nearest earlier keyframe and replays the
+ * rounds after it, so the worst-case seek costs one copy plus (spacing - 1)
+ * round applications.  Every keyframe also holds a full state.  An adaptive
+ * policy picks the widest spacing that keeps seeks under a latency budget,
+ * widening it further if the keyframes left for the rest of the match would
+ * not fit in a memory budget.  If copying a state alone takes longer than
+ * the latency budget, it falls back to INITIAL_SPACING or the memory
+ * budget's spacing, whichever is wider.  Spacing is recomputed after every keyframe
+ * from the timeline's measured clone and apply times, so it follows the
+ * state as it grows over a match.
+ */
+public class KeyFramePolicy {
+
+	/** Spacing used until any round applications have been timed. */
+	public static final int INITIAL_SPACING = 10;
+	public static final int MAX_SPACING = 1000;
+
+	public static final int DEFAULT_SEEK_MILLIS = 16;
+	public static final int DEFAULT_MEMORY_MB = 256;
+
+	private final int fixedSpacing;
+	private final long seekBudgetNanos;
+	private final long memoryBudgetBytes;
+
+	private KeyFramePolicy(int fixedSpacing, long seekBudgetNanos, long memoryBudgetBytes) {
+		this.fixedSpacing = fixedSpacing;
+		this.seekBudgetNanos = seekBudgetNanos;
+		this.memoryBudgetBytes = memoryBudgetBytes;
+	}
+
+	/**
+	 * @param spacing the number of rounds between keyframes
+	 * @return a policy that always uses the given spacing
+	 */
+	public static KeyFramePolicy fixed(int spacing) {
+		return new KeyFramePolicy(Math.max(spacing, 1), 0, 0);
+	}
+
+	/**
+	 * @param seekMillis the worst-case time a seek should take
+	 * @param memoryMB the total size all keyframes of a match may take
+	 * @return a policy that adapts the spacing to both budgets
+	 */
+	public static KeyFramePolicy adaptive(int seekMillis, int memoryMB) {
+		return new KeyFramePolicy(0, seekMillis * 1000000L, memoryMB * (1L << 20));
+	}
+
+	/**
+	 * Reads the policy from the global config.  bc.client.keyframe-spacing
+	 * forces a fixed spacing; otherwise bc.client.keyframe-seek-ms and
+	 * bc.client.keyframe-memory-mb set the budgets of an adaptive policy.
+	 */
+	public static KeyFramePolicy fromConfig() {
+		Config cfg = Config.getGlobalConfig();
+		int spacing = getInt(cfg, "bc.client.keyframe-spacing", 0);
+		if (spacing > 0) {
+			return fixed(spacing);
+		}
+		return adaptive(getInt(cfg, "bc.client.keyframe-seek-ms", DEFAULT_SEEK_MILLIS),
+		                getInt(cfg, "bc.client.keyframe-memory-mb", DEFAULT_MEMORY_MB));
+	}
+
+	private static int getInt(Config cfg, String key, int defaultValue) {
+		String value = cfg.get(key);
+		if (value == null || value.trim().length() == 0) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		}
+		catch (NumberFormatException e) {
+			System.err.println("Ignoring bad value for " + key + ": " + value);
+			return defaultValue;
+		}
+	}
+
+	public boolean isAdaptive() {
+		return fixedSpacing == 0;
+	}
+
+	public long getSeekBudgetNanos() {
+		return seekBudgetNanos;
+	}
+
+	public long getMemoryBudgetBytes() {
+		return memoryBudgetBytes;
+	}
+
+	/**
+	 * Chooses the distance to the next keyframe.
+	 *
+	 * @param applyNanos average time to apply one round, or 0 if unknown
+	 * @param cloneNanos average time to clone or copy a state, or 0 if unknown
+	 * @param stateBytes estimated size of one keyframe, or 0 if unknown
+	 * @param bytesUsed estimated size of the keyframes taken so far
+	 * @param roundsLeft rounds of the match not yet covered by a keyframe
+	 * @return the number of rounds until the next keyframe
+	 */
+	public int nextSpacing(long applyNanos, long cloneNanos, long stateBytes,
+	                       long bytesUsed, int roundsLeft) {
+		if (!isAdaptive()) {
+			return fixedSpacing;
+		}
+		if (applyNanos <= 0) {
+			return INITIAL_SPACING;
+		}
+		// widest spacing that keeps copy + replay within the seek budget;
+		// when the copy alone blows the budget no spacing meets it, and a
+		// keyframe every round would only cost a full state per round
+		long latencySpacing = (cloneNanos >= seekBudgetNanos ? INITIAL_SPACING
+		                       : Math.max(1, (seekBudgetNanos - cloneNanos) / applyNanos));
+		// narrowest spacing whose remaining keyframes fit in memory
+		long memorySpacing = 1;
+		if (stateBytes > 0 && roundsLeft > 0) {
+			long keyFramesLeft = (memoryBudgetBytes - bytesUsed) / stateBytes;
+			memorySpacing = (keyFramesLeft <= 0 ? MAX_SPACING
+			                 : (roundsLeft + keyFramesLeft - 1) / keyFramesLeft);
+		}
+		return (int) Math.min(MAX_SPACING, Math.max(latencySpacing, memorySpacing));
+	}
+}
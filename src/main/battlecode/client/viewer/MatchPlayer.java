@@ -61,6 +61,40 @@ public class MatchPlayer implements Observer, ActionListener {
 	private int delta = DEFAULT_TIME_DELTA;
 	private int fastForward = 1; 
 
+    // in lockstep the server is kept two rounds ahead of the viewer
+    private final boolean lockstep;
+    // otherwise, how far ahead of the viewer a live match is asked to run:
+    // enough rounds to cover the server's latency at the current playback
+    // rate, kept within [minLead, maxLead]
+    private final int minLead = configuredLead("bc.client.lead-min", 50);
+    private final int maxLead = Math.max(minLead, configuredLead("bc.client.lead-max", 500));
+    private int lead = minLead;
+    // rounds played per second and seconds for requested rounds to arrive,
+    // both smoothed
+    private double playRate = 0;
+    private double latency = 0;
+    private int pendingRound = -1;
+    private long pendingSince;
+    private long lastTick = 0;
+    // the round left showing by the last tick, and how far that tick played
+    private int lastTickRound = 0;
+    private int lastStepRounds = 0;
+    private int lastTickAvailable = 0;
+
+    private static int configuredLead(String key, int def) {
+        Config cfg = Config.getGlobalConfig();
+        String value = (cfg == null ? null : cfg.get(key));
+        if (value == null) {
+            return def;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            System.err.println("Ignoring bad value for " + key + ": " + value);
+            return def;
+        }
+    }
+
     public MatchPlayer(MatchViewer v, Controller c, GameStateTimeline gst,
             DebugProxy dp, boolean lockstepChoice) {
 //System.out.println("Start");
@@ -75,12 +109,18 @@ public class MatchPlayer implements Observer, ActionListener {
         match.addMatchListener(ml);
         match.addMatchPausedListener(ml);
 
+        lockstep = lockstepChoice;
         if (lockstepChoice) {
             roundsRequested = 2;
             if (proxy != null) {
                 proxy.writeNotification(new RunNotification(roundsRequested));
             }
             doPlay();
+        } else if (proxy != null) {
+            // a live match runs ahead of the viewer by the adaptive lead
+            roundsRequested = lead;
+            proxy.writeNotification(new RunNotification(roundsRequested));
+            doPlay();
         } else {
             doStep(Integer.MAX_VALUE);
             runSpeed = 1;
@@ -141,15 +181,52 @@ public class MatchPlayer implements Observer, ActionListener {
 
     private void requestRounds() {
         if (timeline.isActive() && !match.isFinished()) {
-            if (timeline.getRound() + 2 > roundsRequested) {
-                roundsRequested = timeline.getRound() + 2;
+            if (lockstep) {
+                if (timeline.getRound() + 2 > roundsRequested) {
+                    roundsRequested = timeline.getRound() + 2;
+                    if (proxy != null) {
+                        proxy.writeNotification(new RunNotification(roundsRequested));
+                    }
+                }
+                return;
+            }
+            // top the lead back up a quarter at a time, so requests go out in
+            // batches rather than every tick
+            if (timeline.getRound() + lead >= roundsRequested + Math.max(1, lead / 4)) {
+                roundsRequested = timeline.getRound() + lead;
                 if (proxy != null) {
                     proxy.writeNotification(new RunNotification(roundsRequested));
+                    if (pendingRound == -1) {
+                        pendingRound = roundsRequested;
+                        pendingSince = System.nanoTime();
+                    }
                 }
             }
         }
     }
 
+    /**
+     * Updates the playback rate and server latency estimates, and the lead
+     * they call for.  The rate only counts rounds played by the timer; a
+     * tick that finds the round moved since the last one (start, end, back
+     * or the slider) is left out.
+     */
+    private void measure() {
+        long now = System.nanoTime();
+        if (lastTick != 0 && now > lastTick && timeline.getRound() == lastTickRound) {
+            double rate = lastStepRounds * 1e9 / (now - lastTick);
+            playRate = 0.9 * playRate + 0.1 * Math.max(rate, 0);
+        }
+        lastTick = now;
+        lastStepRounds = 0;
+        if (pendingRound != -1 && match.getRoundsAvailable() >= pendingRound) {
+            double seconds = (now - pendingSince) / 1e9;
+            latency = (latency == 0 ? seconds : 0.8 * latency + 0.2 * seconds);
+            pendingRound = -1;
+        }
+        lead = (int) Math.max(minLead, Math.min(maxLead, Math.ceil(2 * playRate * latency)));
+    }
+
     private void runServerUntil(int round) {
         if (round > roundsRequested) {
             if (proxy != null) {
@@ -165,6 +242,10 @@ public class MatchPlayer implements Observer, ActionListener {
 
     private void timerTick() {
       controller.updateRoundLabel(timeline);
+        measure();
+        int available = match.getRoundsAvailable();
+        int arrived = available - lastTickAvailable;
+        lastTickAvailable = available;
         if (isPlaying) {
             if (timeline.getRound() == maxPlayRound) {
                 isStepping = false;
@@ -180,13 +261,21 @@ public class MatchPlayer implements Observer, ActionListener {
                     proxy = null;
                 }
             }
-            timeline.setRound(timeline.getRound() + runSpeed);
+            int step = runSpeed;
+            if (fastForward == 0 && !isStepping && proxy != null) {
+                // at full speed keep pace with the server rather than the timer
+                step = Math.max(step, Math.min(arrived, maxPlayRound - timeline.getRound()));
+            }
+            int from = timeline.getRound();
+            timeline.setRound(from + step);
+            lastStepRounds = timeline.getRound() - from;
             if (breakRound == -1 && !isStepping) {
                 requestRounds();
             }
         } else {
             timeline.refreshRound();
         }
+        lastTickRound = timeline.getRound();
     }
 
 		public void togglePause() {
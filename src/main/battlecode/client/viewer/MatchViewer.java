@@ -127,6 +127,9 @@ public class MatchViewer {
       proxy.writeNotification(StartNotification.INSTANCE);
     }
     
+    if (br instanceof GameRenderer) {
+      ((GameRenderer) br).getMatch().release();
+    }
     final BufferedMatch bufferedMatch = new BufferedMatch(proxy);
         
       br = new GameRenderer(bufferedMatch);
@@ -153,7 +156,7 @@ public class MatchViewer {
             int clampedXLoc = Math.max(origin.x, Math.min(x, corner.x));
             int clampedYLoc = Math.max(origin.y, Math.min(y, corner.y));
             info.updateDebugChanges(robot, clampedXLoc, clampedYLoc,
-                                    br.getDrawState().getGameMap().getInitialOre(new MapLocation(clampedXLoc, clampedYLoc)) - br.getDrawState().getOreAtLocation(new MapLocation(clampedXLoc, clampedYLoc)));
+                                    ds.getOreDensity(clampedXLoc - origin.x, clampedYLoc - origin.y));
           }
         };
       bc.addPaintObserver(paintObserver);
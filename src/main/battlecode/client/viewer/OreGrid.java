@@ -0,0 +1,100 @@
+package battlecode.client.viewer;
+
+import java.util.Arrays;
+
+/**
+ * The ore on every cell of the map, as a grid of primitive tiles.
+ *
+ * Cells are given relative to the map origin.  Like the fog of war in
+ * DrawableMapMemory, the map is split into 16x16 tiles that a copy shares
+ * with its source until either of them writes to one, so a keyframe only
+ * pays for the tiles that were mined since the previous one.
+ */
+final class OreGrid {
+
+	private static final int TILE_SHIFT = 4;
+	private static final int TILE_SIZE = 1 << TILE_SHIFT;
+	private static final int TILE_MASK = TILE_SIZE - 1;
+	// the array plus its header
+	private static final int TILE_BYTES = 8 * TILE_SIZE * TILE_SIZE + 16;
+	// every tile starts out as this one, which is never written
+	private static final double[] EMPTY_TILE = new double[TILE_SIZE * TILE_SIZE];
+
+	public final int width, height;
+	private final int tilesX;
+	private final double[][] tiles;
+	// whether each tile belongs to this grid alone; tiles that don't are
+	// shared with copies and are replaced before their first change
+	private final boolean[] owned;
+
+	public OreGrid(int width, int height) {
+		this.width = width;
+		this.height = height;
+		tilesX = (width + TILE_MASK) >> TILE_SHIFT;
+		int tilesY = (height + TILE_MASK) >> TILE_SHIFT;
+		tiles = new double[tilesX * tilesY][];
+		owned = new boolean[tiles.length];
+		Arrays.fill(tiles, EMPTY_TILE);
+	}
+
+	public OreGrid(OreGrid source) {
+		width = source.width;
+		height = source.height;
+		tilesX = source.tilesX;
+		tiles = source.tiles.clone();
+		owned = new boolean[tiles.length];
+		Arrays.fill(source.owned, false);
+	}
+
+	/**
+	 * @return the ore on a cell, or 0 off the map
+	 */
+	public double get(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			return 0;
+		}
+		return tiles[(y >> TILE_SHIFT) * tilesX + (x >> TILE_SHIFT)]
+			[((y & TILE_MASK) << TILE_SHIFT) | (x & TILE_MASK)];
+	}
+
+	/**
+	 * Sets the ore on a cell; cells off the map are ignored.
+	 */
+	public void set(int x, int y, double ore) {
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			return;
+		}
+		int tile = (y >> TILE_SHIFT) * tilesX + (x >> TILE_SHIFT);
+		if (!owned[tile]) {
+			tiles[tile] = tiles[tile].clone();
+			owned[tile] = true;
+		}
+		tiles[tile][((y & TILE_MASK) << TILE_SHIFT) | (x & TILE_MASK)] = ore;
+	}
+
+	/**
+	 * @return the bytes of tiles changed since this grid was last copied
+	 */
+	public long getUnsharedBytes() {
+		long bytes = 0;
+		for (int i = 0; i < owned.length; i++) {
+			if (owned[i]) {
+				bytes += TILE_BYTES;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return the bytes of every tile that has been written, shared or not
+	 */
+	public long getTotalBytes() {
+		long bytes = 8L * tiles.length;
+		for (int i = 0; i < tiles.length; i++) {
+			if (tiles[i] != EMPTY_TILE) {
+				bytes += TILE_BYTES;
+			}
+		}
+		return bytes;
+	}
+}
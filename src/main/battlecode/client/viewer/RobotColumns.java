@@ -0,0 +1,62 @@
+package battlecode.client.viewer;
+
+import java.util.Arrays;
+
+/**
+ * Per-robot values that change every round, stored as parallel primitive
+ * arrays indexed by a slot.
+ *
+ * Each AbstractDrawState owns one of these and gives every robot it holds a
+ * slot, so that HealthChangeSignal and RobotInfoSignal, which touch every
+ * robot every round, are applied as writes into flat arrays.  Robots read
+ * their values back through their getters.
+ */
+final class RobotColumns {
+
+	double[] health;
+	double[] coreDelay;
+	double[] weaponDelay;
+	double[] supply;
+
+	// slots below end that have been released, to be handed out again
+	private int[] free = new int[16];
+	private int freeCount = 0;
+	private int end = 0;
+
+	public RobotColumns(int capacity) {
+		capacity = Math.max(capacity, 16);
+		health = new double[capacity];
+		coreDelay = new double[capacity];
+		weaponDelay = new double[capacity];
+		supply = new double[capacity];
+	}
+
+	public int allocate() {
+		if (freeCount > 0) {
+			return free[--freeCount];
+		}
+		if (end == health.length) {
+			int capacity = end * 2;
+			health = Arrays.copyOf(health, capacity);
+			coreDelay = Arrays.copyOf(coreDelay, capacity);
+			weaponDelay = Arrays.copyOf(weaponDelay, capacity);
+			supply = Arrays.copyOf(supply, capacity);
+		}
+		return end++;
+	}
+
+	public void release(int slot) {
+		if (freeCount == free.length) {
+			free = Arrays.copyOf(free, free.length * 2);
+		}
+		free[freeCount++] = slot;
+	}
+
+	/**
+	 * Releases every slot.  Robots that held one must have been detached.
+	 */
+	public void clear() {
+		freeCount = 0;
+		end = 0;
+	}
+}
@@ -0,0 +1,116 @@
+package battlecode.client.viewer;
+
+import java.util.Arrays;
+
+import battlecode.common.MapLocation;
+import battlecode.common.RobotType;
+import battlecode.common.Team;
+
+/**
+ * The robots of a state indexed by the cell they stand on, along with how
+ * many of each type each team has.
+ *
+ * Every cell of the map holds the IDs of its robots in a small array, so
+ * finding the robots at or near a location only looks at the cells
+ * involved.  Robots off the map are counted but not placed.  The caller
+ * keeps the grid up to date by telling it whenever a robot is added, moves
+ * or goes away, giving the location the grid last knew it at.
+ */
+final class RobotGrid {
+
+	private final int originX, originY;
+	private final int width, height;
+	// robot IDs on each cell, row by row; null until a robot stands there
+	private final int[][] cells;
+	private final int[] sizes;
+	private final int[][] counts = new int[Team.values().length][RobotType.values().length];
+
+	public RobotGrid(MapLocation origin, int width, int height) {
+		this.originX = origin.x;
+		this.originY = origin.y;
+		this.width = width;
+		this.height = height;
+		cells = new int[width * height][];
+		sizes = new int[width * height];
+	}
+
+	private int cell(int x, int y) {
+		x -= originX;
+		y -= originY;
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			return -1;
+		}
+		return y * width + x;
+	}
+
+	public void add(int id, MapLocation loc, Team team, RobotType type) {
+		counts[team.ordinal()][type.ordinal()]++;
+		place(id, loc);
+	}
+
+	public void remove(int id, MapLocation loc, Team team, RobotType type) {
+		counts[team.ordinal()][type.ordinal()]--;
+		unplace(id, loc);
+	}
+
+	public void move(int id, MapLocation from, MapLocation to) {
+		if (from != null && to != null && from.x == to.x && from.y == to.y) {
+			return;
+		}
+		unplace(id, from);
+		place(id, to);
+	}
+
+	private void place(int id, MapLocation loc) {
+		int c = (loc == null ? -1 : cell(loc.x, loc.y));
+		if (c < 0) {
+			return;
+		}
+		int[] ids = cells[c];
+		if (ids == null) {
+			ids = cells[c] = new int[2];
+		}
+		else if (sizes[c] == ids.length) {
+			ids = cells[c] = Arrays.copyOf(ids, 2 * ids.length);
+		}
+		ids[sizes[c]++] = id;
+	}
+
+	private void unplace(int id, MapLocation loc) {
+		int c = (loc == null ? -1 : cell(loc.x, loc.y));
+		if (c < 0) {
+			return;
+		}
+		int[] ids = cells[c];
+		for (int i = 0; i < sizes[c]; i++) {
+			if (ids[i] == id) {
+				// keep the rest in the order they arrived
+				System.arraycopy(ids, i + 1, ids, i, sizes[c] - i - 1);
+				sizes[c]--;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return how many robots stand on a cell, given in map coordinates
+	 */
+	public int getCount(int x, int y) {
+		int c = cell(x, y);
+		return (c < 0 ? 0 : sizes[c]);
+	}
+
+	/**
+	 * @return the ID of the i-th robot to arrive on a cell
+	 */
+	public int getID(int x, int y, int i) {
+		return cells[cell(x, y)][i];
+	}
+
+	/**
+	 * @return how many robots of each type, by ordinal, a team has
+	 */
+	public int[] getCounts(Team t) {
+		return counts[t.ordinal()].clone();
+	}
+}
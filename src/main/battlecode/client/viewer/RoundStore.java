@@ -0,0 +1,267 @@
+package battlecode.client.viewer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import battlecode.client.util.SignalCodec;
+import battlecode.serial.RoundDelta;
+
+/**
+ * Packed storage for the rounds of a match.
+ *
+ * Rather than keeping every round's signals alive as objects, each incoming
+ * RoundDelta is encoded with a {@link SignalCodec} into a byte column, and an
+ * int column records where each round lives.  getRound hands out a freshly
+ * decoded RoundDelta, so the heap cost of a buffered match is the encoded size
+ * of its signals instead of their object graphs.
+ *
+ * The store has a single writer (the match reader thread) and any number of
+ * readers.  Both columns are segmented so that nothing is ever moved after it
+ * is written, and each round is published through a volatile count, which
+ * makes size() and get() wait-free.
+ *
+ * A store may be given a spill threshold: once its blocks take more heap
+ * than that, each further full block is appended to a temporary spill file
+ * and replaced by a read-only mapping of it, so the heap it takes stays
+ * bounded however long the match is.  close() deletes the file.
+ *
+ * Recently decoded rounds are kept in a small cache either way, since
+ * seeking replays the same rounds over and over.  The cache is
+ * set-associative with second-chance eviction: a round may only live in the
+ * few slots of its set, a hit marks its entry as referenced, and a miss
+ * replaces the first unreferenced entry of the set, clearing the marks of
+ * the entries it passes.  Slots are swapped in with compareAndSet, so
+ * readers never lock; a lost race only means a round isn't cached.
+ */
+final class RoundStore {
+
+	private static final int BLOCK_SIZE = 1 << 20;
+	private static final int CHUNK_SHIFT = 10;
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	// block, start, length
+	private static final int INDEX_WIDTH = 3;
+
+	public static final int DEFAULT_CACHE_SIZE = 64;
+	public static final long NEVER_SPILL = Long.MAX_VALUE;
+
+	// slots per cache set
+	private static final int WAYS = 4;
+
+	private final SignalCodec codec = new SignalCodec();
+	private final SignalCodec.Output scratch = new SignalCodec.Output(1 << 12);
+
+	// writer-only state
+	private byte[] current = null;
+	private int blockCount = 0;
+	private int blockUsed = 0;
+	private long encodedSize = 0;
+
+	private volatile ByteBuffer[] blocks = new ByteBuffer[8];
+	private volatile int[][] index = new int[16][];
+	private volatile int count = 0;
+
+	private final long spillThreshold;
+	private File spillPath = null;
+	private RandomAccessFile spillFile = null;
+	private long spillSize = 0;
+	private boolean closed = false;
+
+	private final AtomicReferenceArray<CacheEntry> recent;
+	private final int cacheSets;
+
+	private static final class CacheEntry {
+		final int round;
+		final RoundDelta delta;
+		volatile boolean referenced = false;
+
+		CacheEntry(int round, RoundDelta delta) {
+			this.round = round;
+			this.delta = delta;
+		}
+	}
+
+	public RoundStore() {
+		this(NEVER_SPILL, DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * @param spillThreshold how many bytes of blocks to keep on the heap
+	 * before spilling full blocks to a memory-mapped file, or NEVER_SPILL
+	 * @param cacheSize about how many decoded rounds to keep
+	 */
+	public RoundStore(long spillThreshold, int cacheSize) {
+		this.spillThreshold = spillThreshold;
+		this.cacheSets = Math.max(1, (cacheSize + WAYS - 1) / WAYS);
+		this.recent = new AtomicReferenceArray<CacheEntry>(cacheSets * WAYS);
+	}
+
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Encodes and appends a round.  Must only be called from the writer thread.
+	 */
+	public void add(RoundDelta delta) {
+		scratch.reset();
+		codec.writeSignals(delta.getSignals(), scratch);
+		int length = scratch.size();
+
+		if (current == null || blockUsed + length > current.length) {
+			if (current != null && !closed && encodedSize - spillSize > spillThreshold) {
+				spill(blockCount - 1);
+			}
+			ByteBuffer[] blockDir = blocks;
+			if (blockCount == blockDir.length) {
+				blockDir = Arrays.copyOf(blockDir, blockDir.length * 2);
+				blocks = blockDir;
+			}
+			current = new byte[Math.max(BLOCK_SIZE, length)];
+			blockDir[blockCount++] = ByteBuffer.wrap(current);
+			blockUsed = 0;
+		}
+		int block = blockCount - 1;
+		System.arraycopy(scratch.array(), 0, current, blockUsed, length);
+
+		int n = count;
+		int chunk = n >>> CHUNK_SHIFT;
+		int[][] indexDir = index;
+		if (chunk == indexDir.length) {
+			indexDir = Arrays.copyOf(indexDir, indexDir.length * 2);
+			index = indexDir;
+		}
+		if (indexDir[chunk] == null) {
+			indexDir[chunk] = new int[CHUNK_SIZE * INDEX_WIDTH];
+		}
+		int i = (n & CHUNK_MASK) * INDEX_WIDTH;
+		indexDir[chunk][i] = block;
+		indexDir[chunk][i + 1] = blockUsed;
+		indexDir[chunk][i + 2] = length;
+
+		blockUsed += length;
+		encodedSize += length;
+		count = n + 1;
+	}
+
+	/**
+	 * Moves the used part of a full block into the spill file and swaps in a
+	 * mapping of it.  Readers holding the heap copy keep reading it safely.
+	 */
+	private void spill(int block) {
+		try {
+			if (spillFile == null) {
+				spillPath = File.createTempFile("bc-rounds", ".bin");
+				spillPath.deleteOnExit();
+				spillFile = new RandomAccessFile(spillPath, "rw");
+			}
+			FileChannel channel = spillFile.getChannel();
+			ByteBuffer used = ByteBuffer.wrap(current, 0, blockUsed);
+			long position = spillSize;
+			while (used.hasRemaining()) {
+				position += channel.write(used, position);
+			}
+			// swap in a new directory so readers see either the heap block or
+			// a fully published mapping
+			ByteBuffer[] blockDir = blocks.clone();
+			blockDir[block] = channel.map(FileChannel.MapMode.READ_ONLY, spillSize, blockUsed);
+			blocks = blockDir;
+			spillSize = position;
+		}
+		catch (IOException e) {
+			// keep this block on the heap; the store still works, just bigger
+			System.err.println("Can't spill rounds to disk: " + e);
+		}
+	}
+
+	/**
+	 * @return a decoded view of the given round, or null if it hasn't been
+	 * published yet
+	 */
+	public RoundDelta get(int round) {
+		if (round < 0 || round >= count) {
+			return null;
+		}
+		int base = (round % cacheSets) * WAYS;
+		for (int w = 0; w < WAYS; w++) {
+			CacheEntry e = recent.get(base + w);
+			if (e != null && e.round == round) {
+				e.referenced = true;
+				return e.delta;
+			}
+		}
+		int[] chunk = index[round >>> CHUNK_SHIFT];
+		int i = (round & CHUNK_MASK) * INDEX_WIDTH;
+		ByteBuffer block = blocks[chunk[i]].duplicate();
+		block.position(chunk[i + 1]);
+		block.limit(chunk[i + 1] + chunk[i + 2]);
+		RoundDelta delta = new RoundDelta(codec.readSignals(block));
+		cache(base, new CacheEntry(round, delta));
+		return delta;
+	}
+
+	/**
+	 * Puts an entry into the first free or unreferenced slot of its set,
+	 * giving referenced entries a second chance.
+	 */
+	private void cache(int base, CacheEntry entry) {
+		for (int pass = 0; pass < 2; pass++) {
+			for (int w = 0; w < WAYS; w++) {
+				CacheEntry e = recent.get(base + w);
+				if (e == null || !e.referenced) {
+					recent.compareAndSet(base + w, e, entry);
+					return;
+				}
+				e.referenced = false;
+			}
+		}
+	}
+
+	/**
+	 * Forgets every round.  Must only be called from the writer thread before
+	 * readers have been given any rounds.
+	 */
+	public void clear() {
+		for (int i = 0; i < recent.length(); i++) {
+			recent.set(i, null);
+		}
+		closeSpillFile();
+		blocks = new ByteBuffer[8];
+		index = new int[16][];
+		current = null;
+		blockCount = 0;
+		blockUsed = 0;
+		encodedSize = 0;
+		count = 0;
+	}
+
+	/**
+	 * Closes and deletes the spill file, and keeps any later blocks on the
+	 * heap.  Rounds already spilled stay readable until their mappings are
+	 * collected.
+	 */
+	public void close() {
+		closed = true;
+		closeSpillFile();
+	}
+
+	private void closeSpillFile() {
+		if (spillFile != null) {
+			try {
+				spillFile.close();
+			}
+			catch (IOException e) {}
+			// mapped files can't be deleted on some platforms until the
+			// mappings go away, in which case deleteOnExit gets it later
+			spillPath.delete();
+			spillFile = null;
+			spillPath = null;
+			spillSize = 0;
+		}
+	}
+}
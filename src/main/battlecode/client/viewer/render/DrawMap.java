@@ -39,6 +39,7 @@ public class DrawMap {
 
   // prerendered images
   private BufferedImage prerender;
+  private int version = 0;
   private BufferedImage roadPrerender;
 
   private BufferedImage mapBG;
@@ -78,7 +79,15 @@ public class DrawMap {
 
   }
 
+  /**
+   * @return a count that changes whenever the prerendered map does
+   */
+  public int getVersion() {
+    return version;
+  }
+
   public void prerenderMap(battlecode.world.GameMap m) {
+    version++;
     Graphics2D g2 = prerender.createGraphics();
     g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER));
 
@@ -108,6 +117,7 @@ public class DrawMap {
   }
 
   public void prerenderMap(BufferedImage bg) {
+    version++;
     prerender = bg;
   }
 
@@ -72,6 +72,9 @@ class DrawObject extends AbstractDrawObject<Animation> {
   private static final Color shieldColor = new Color(150,150,255,150);
   private static final Color regenColor = new Color(150,255,150,150);
   private final DrawState overallstate;
+  // where the robot came in the last frame's drawing order, or -1 if it
+  // couldn't be hovered over
+  int drawOrder = -1;
     
   public static final ImageFile[] hatImages;
     
@@ -120,6 +123,13 @@ class DrawObject extends AbstractDrawObject<Animation> {
     overallstate = copy.overallstate;
   }
 
+  @Override
+  public boolean matchesCopy(AbstractDrawObject<Animation> copy) {
+    return super.matchesCopy(copy)
+      && img == ((DrawObject) copy).img
+      && maxEnergon == ((DrawObject) copy).maxEnergon;
+  }
+
   public static void loadAll() {
     for (RobotType type : RobotType.values()) {
       for (Team team : Team.values()) {
@@ -192,6 +202,32 @@ class DrawObject extends AbstractDrawObject<Animation> {
     }
   }
 
+    /**
+     * @return whether draw might draw anything in the given layer
+     */
+    public boolean drawsInLayer(int layer) {
+	switch (layer) {
+	case 0:
+	    return RenderConfiguration.showRangeHatch()
+		|| (RenderConfiguration.showSupplyIndicators()
+		    && (getSupplyLevel() != 0 || !info.type.isBuilding));
+	case 1:
+	    return true;
+	case 2:
+	    if (info.type == RobotType.COMMANDER) {
+		return true;
+	    }
+	    for (AbstractAnimation.AnimationType type : postDrawOrder) {
+		if (type.shown() && animations.containsKey(type)) {
+		    return true;
+		}
+	    }
+	    return false;
+	default:
+	    return false;
+	}
+    }
+
     public void draw(Graphics2D g2, boolean focused, boolean lastRow, int layer) {
 	if(layer == 0) {
 	    if (RenderConfiguration.showRangeHatch() && focused) {
@@ -236,14 +272,14 @@ class DrawObject extends AbstractDrawObject<Animation> {
     	if (!RenderConfiguration.showSupplyIndicators()) return;
     	final Color supplyHaze;
     	//final int size = (int)drawScale();
-    	if (supplyLevel == 0) {
+    	if (getSupplyLevel() == 0) {
     		if (info.type.isBuilding) {
     			return; // No need to draw black for buildings sans supplies
     		} else {
     			supplyHaze = new Color(0,0,0,0.3f);
     		}
     	} else {
-    		supplyHaze = new Color(1,1,1,supplyLevel < 2000? (float)(supplyLevel / 2000)/6f: 1.0f/6.0f);
+    		supplyHaze = new Color(1,1,1,getSupplyLevel() < 2000? (float)(getSupplyLevel() / 2000)/6f: 1.0f/6.0f);
     	}
     	
     	g2.setPaint(supplyHaze);
@@ -376,7 +412,7 @@ class DrawObject extends AbstractDrawObject<Animation> {
       	new Rectangle2D.Float(0, lastRow?0.85f:1, 1, 0.15f);
       g2.setColor(Color.BLACK);
       g2.fill(rect);
-      float frac = Math.min((float) (energon / maxEnergon), 1);
+      float frac = Math.min((float) (getEnergon() / maxEnergon), 1);
       rect.width = frac*(getType()==RobotType.COMMANDER?1.4f:1f);
       if (frac < 0)
         frac = 0;
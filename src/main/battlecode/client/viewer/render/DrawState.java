@@ -1,15 +1,19 @@
 package battlecode.client.viewer.render;
 
+import java.awt.AlphaComposite;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.Stroke;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Line2D;
 import java.awt.image.BufferedImage;
+import java.lang.ref.WeakReference;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -23,6 +27,7 @@ import java.util.Random;
 import java.util.Set;
 
 import battlecode.client.util.ImageFile;
+import battlecode.client.util.IntObjectMap;
 import battlecode.client.viewer.AbstractDrawState;
 import battlecode.client.viewer.DebugState;
 import battlecode.client.viewer.FluxDepositState;
@@ -58,11 +63,33 @@ public class DrawState extends AbstractDrawState<DrawObject> {
   // We only ever need one of these (having one for each draw state eats up memory way too fast)
   // So make it a mutable static, as uncomfortable as that is.
   protected static BufferedImage fogOfWarBlitImage;
+  // the memory whose contents fogOfWarBlitImage holds; when a different one
+  // is drawn (another state, or a rewind) the image is refreshed in full.
+  // Held weakly so the image doesn't keep a discarded state's memory alive.
+  private static WeakReference<DrawableMapMemory> fogOfWarBlitSource =
+      new WeakReference<DrawableMapMemory>(null);
+
+  // For drawing ore densities, shared the same way.  Each cell is
+  // ORE_CELL_PIXELS on a side, so the squares keep some of their size.
+  private static final int ORE_CELL_PIXELS = 8;
+  private static final Color oreColor = new Color(.75f, .75f, .75f, .5f);
+  private static final Color oreClear = new Color(0, 0, 0, 0);
+  private static BufferedImage oreBlitImage;
+  // the ore layer and threshold that oreBlitImage was drawn from
+  private static WeakReference<Object> oreBlitSource = new WeakReference<Object>(null);
+  private static double oreBlitThreshold;
   
   // For drawing mining animations.
   // (ugly hack to work around MineSignals not including robotIDs.)
   protected Set<MiningAnim> miningAnimations;
 
+  // the draw lists of the last frame, kept to be refilled by the next: the
+  // robots drawn in each layer
+  private DrawObject[][] layerBuckets;
+  private int[] layerCounts;
+  // the robots near the mouse, refilled by findHover
+  private final List<DrawObject> hoverCandidates = new ArrayList<DrawObject>();
+
   private static class Factory implements GameStateFactory<DrawState> {
 
     public DrawState createState(GameMap map) {
@@ -90,8 +117,8 @@ public class DrawState extends AbstractDrawState<DrawObject> {
   //int[][] blockNumber;
 
   public DrawState() {
-    groundUnits = new LinkedHashMap<Integer, DrawObject>();
-    airUnits = new LinkedHashMap<Integer, DrawObject>();
+    groundUnits = new IntObjectMap<DrawObject>();
+    airUnits = new IntObjectMap<DrawObject>();
     encampments = new HashSet<MapLocation>();
     towers = new LinkedList<DrawObject>();
     fluxDeposits = new LinkedHashMap<Integer, FluxDepositState>();
@@ -108,7 +135,7 @@ public class DrawState extends AbstractDrawState<DrawObject> {
 
   private DrawState(DrawState clone) {
     this();
-    copyStateFrom(clone);
+    copyStateFrom(clone, true);
     this.doodads = clone.doodads;
     this.miningAnimations.clear();
     this.miningAnimations.addAll(clone.miningAnimations);
@@ -202,6 +229,7 @@ public class DrawState extends AbstractDrawState<DrawObject> {
 
   public synchronized void apply(RoundStats stats) {
       this.stats = stats;
+      stateChanged();
     }
 
   public DrawObject getDrawObject(int id) {
@@ -241,7 +269,16 @@ public class DrawState extends AbstractDrawState<DrawObject> {
    * @param g2 The graphics context, transformed to MapLocation-space
    * @param debug The debug state, including MapLocation-space mouse state
    */
-  public synchronized void draw(Graphics2D g2, DebugState debug) {
+  public void draw(Graphics2D g2, DebugState debug) {
+    draw(g2, debug, true);
+  }
+
+  /**
+   * Draws the current game state, leaving out the ore and fog of war if
+   * overlays is false, for a renderer that draws them itself from
+   * drawOverlays.
+   */
+  public synchronized void draw(Graphics2D g2, DebugState debug, boolean overlays) {
       if (RenderConfiguration.showSpawnRadii()) {
         /*
           for (DrawObject tower : towers) {
@@ -254,7 +291,7 @@ public class DrawState extends AbstractDrawState<DrawObject> {
       int hoverID = -1;
       MapLocation hoverLoc = null;
       long controlBits = 0;
-      Iterable<Map.Entry<Integer, DrawObject>> drawableSet = getDrawableSet();
+      Iterable<DrawObject> drawableSet = getDrawableSet();
 
 
       if (drawableSet == null) {
@@ -269,69 +306,10 @@ public class DrawState extends AbstractDrawState<DrawObject> {
       }
       g2.setTransform(pushed);
       
-      // ore densities
-      double maxDensity = 0.0;
-      for (int i = 0; i < gameMap.getWidth() && RenderConfiguration.showCows(); i++) {
-	  for (int j = 0; j < gameMap.getHeight(); j++) {
-	      int x = i + gameMap.getMapOrigin().x;
-	      int y = j + gameMap.getMapOrigin().y;
-	      double density =  gameMap.getInitialOre(new MapLocation(x, y))
-		- getOreAtLocation(new MapLocation(x, y));
-		    
-	      maxDensity = Math.max(maxDensity, density);
-        }
-      }
-      double thresholdDensity = Math.max(5, .1 * maxDensity);
-      if (RenderConfiguration.threshCows()) {
-        maxDensity -= thresholdDensity;
-      }
-      for (int i = 0; i < gameMap.getWidth() && RenderConfiguration.showCows(); i++) {
-	  for (int j = 0; j < gameMap.getHeight(); j++) {
-	      int x = i + gameMap.getMapOrigin().x;
-	      int y = j + gameMap.getMapOrigin().y;
-	      
-	      double density =  gameMap.getInitialOre(new MapLocation(x, y))
-		  - getOreAtLocation(new MapLocation(x, y));
-		    
-	      if(RenderConfiguration.threshCows()) {
-		  if(density < thresholdDensity) continue;
-		  else density -= thresholdDensity;
-	      }
-	      //I'm leaving the different coloring code intact in case we
-	      // think of something cool
-	      // float lum = (float)(.5 * density / maxDensity + .25);
-	      // lum = Math.max(Math.min(lum, 1.0f), 0.0f);
-	      float lum = .75f;
-	      float r = lum;
-	      float b = lum;
-	      float g = lum;
-	      g2.setColor(new Color(r, g, b, .5f));
-	      // cap at the max possible size
-	      float maxSize = .45f;
-	      float maxPossible = gameMap.getMaxInitialOre();
-	      float size = (float) Math.min(Math.sqrt(density / maxPossible), 1.0f);
-	      size *= maxSize;
-	      // make appear at the center
-	      float offset = ((1.0f - size) / 2);
-	      g2.fill(new Rectangle2D.Float(x + offset, y + offset, size, size));
-	  }
+      if (overlays) {
+        drawOverlays(g2);
       }
 
-		if (RenderConfiguration.showFogOfWar()) {
-			// Draw fog of war
-			if (!mapMemoryImage.compatible(fogOfWarBlitImage)) {
-				// Our static blit buffer is the wrong size, resize it
-				fogOfWarBlitImage = mapMemoryImage.createCompatibleBufferedImage();
-			}
-			// Blit fog of war onto buffered image
-			// (We do this every frame instead of just storing a bufferedImage
-			// because that uses up wayyy too much memory)
-			mapMemoryImage.copyMemoryToImage(fogOfWarBlitImage);
-			// Draw, nice and simple.
-			g2.drawImage(fogOfWarBlitImage, gameMap.getMapOrigin().x,
-					gameMap.getMapOrigin().y, null);
-		}
-      
       for(IndicatorDotSignal s : indicatorDots) {
         if(RenderConfiguration.showIndicatorDots(s.team)&&(focusID==-1||focusID==s.robotID)) {
             g2.setColor(new Color(s.red,s.green,s.blue));
@@ -352,22 +330,21 @@ public class DrawState extends AbstractDrawState<DrawObject> {
         }
       }
 
+      buildDrawList(drawableSet, dragID);
+      DrawObject hover = findHover(debug.getX(), debug.getY());
+      if (hover != null) {
+	  hoverID = hover.getID();
+	  hoverLoc = hover.getLocation();
+	  controlBits = hover.getControlBits();
+      }
       for (int layer = 0; layer < DrawObject.LAYER_COUNT; layer++) {
-	  for (Map.Entry<Integer, DrawObject> entry : drawableSet) {
-
-	      int id = entry.getKey();
-	      DrawObject obj = entry.getValue();
-	      if(obj.inTransport()) continue;
-
+	  DrawObject[] bucket = layerBuckets[layer];
+	  for (int i = 0; i < layerCounts[layer]; i++) {
+	      DrawObject obj = bucket[i];
+	      int id = obj.getID();
 	      if (id == dragID) {
 		  drawDragged(g2, debug, obj);
 	      } else {
-		  if (Math.abs(debug.getX() - obj.getDrawX() - 0.5) < 0.5
-		      && Math.abs(debug.getY() - obj.getDrawY() - 0.5) < 0.5) {
-		      hoverID = id;
-		      hoverLoc = obj.getLocation();
-		      controlBits = obj.getControlBits();
-		  }
 		  obj.draw(g2, id == focusID || id == hoverID,
 			   obj.getLocation().y==origin.y+gameMap.getHeight()-1,
 			   layer);
@@ -433,8 +410,174 @@ public class DrawState extends AbstractDrawState<DrawObject> {
 
     }
   
+  /**
+   * Draws the ore densities and fog of war, which change at most once a
+   * round.
+   */
+  public synchronized void drawOverlays(Graphics2D g2) {
+    if (RenderConfiguration.showCows()) {
+      drawOreDensities(g2);
+    }
+
+    if (RenderConfiguration.showFogOfWar()) {
+      // Draw fog of war
+      if (!mapMemoryImage.compatible(fogOfWarBlitImage)) {
+        // Our static blit buffer is the wrong size, resize it
+        fogOfWarBlitImage = mapMemoryImage.createCompatibleBufferedImage();
+        fogOfWarBlitSource = new WeakReference<DrawableMapMemory>(null);
+      }
+      // Blit fog of war onto buffered image
+      // (We do this every frame instead of just storing a bufferedImage
+      // because that uses up wayyy too much memory)
+      if (fogOfWarBlitSource.get() != mapMemoryImage) {
+        mapMemoryImage.copyMemoryToImage(fogOfWarBlitImage);
+        fogOfWarBlitSource = new WeakReference<DrawableMapMemory>(mapMemoryImage);
+      }
+      else {
+        mapMemoryImage.copyChangesToImage(fogOfWarBlitImage);
+      }
+      // Draw, nice and simple.
+      g2.drawImage(fogOfWarBlitImage, gameMap.getMapOrigin().x,
+          gameMap.getMapOrigin().y, null);
+    }
+  }
+
+  /**
+   * @return an object equal to the one returned by the previous call if
+   * drawOverlays would draw the same thing as it did then, or null if it
+   * might not
+   */
+  public synchronized Object getOverlayKey() {
+    boolean cows = RenderConfiguration.showCows();
+    boolean fog = RenderConfiguration.showFogOfWar();
+    if ((cows && oreDirtyMaxX >= oreDirtyMinX) || (fog && mapMemoryImage.isDirty())) {
+      return null;
+    }
+    return Arrays.<Object>asList(oreLayerSource, mapMemoryImage, cows, fog,
+                                 RenderConfiguration.threshCows());
+  }
+
+  /**
+   * Walks the robots once, putting each in the bucket of every layer it
+   * draws in, in drawing order, and numbering the ones that can be hovered
+   * over in that order.
+   */
+  private void buildDrawList(Iterable<DrawObject> drawableSet, int dragID) {
+    if (layerBuckets == null) {
+      layerBuckets = new DrawObject[DrawObject.LAYER_COUNT][64];
+      layerCounts = new int[DrawObject.LAYER_COUNT];
+    }
+    Arrays.fill(layerCounts, 0);
+    int drawCount = 0;
+    for (DrawObject obj : drawableSet) {
+      obj.drawOrder = -1;
+      if (obj.inTransport()) {
+        continue;
+      }
+      boolean dragged = (obj.getID() == dragID);
+      for (int layer = 0; layer < DrawObject.LAYER_COUNT; layer++) {
+        if (dragged || obj.drawsInLayer(layer)) {
+          DrawObject[] bucket = layerBuckets[layer];
+          if (layerCounts[layer] == bucket.length) {
+            bucket = layerBuckets[layer] = Arrays.copyOf(bucket, 2 * bucket.length);
+          }
+          bucket[layerCounts[layer]++] = obj;
+        }
+      }
+      if (!dragged) {
+        obj.drawOrder = drawCount++;
+      }
+    }
+    // let go of robots that have since been removed
+    for (int layer = 0; layer < DrawObject.LAYER_COUNT; layer++) {
+      Arrays.fill(layerBuckets[layer], layerCounts[layer], layerBuckets[layer].length, null);
+    }
+  }
+
+  /**
+   * @return the last robot drawn whose square holds the given point, or
+   * null if there is none
+   */
+  private DrawObject findHover(double x, double y) {
+    // a robot is drawn at most a cell away from where it stands, so only
+    // the robots standing next to the point's cell can cover it
+    getRobotsWithin(new MapLocation((int) Math.floor(x), (int) Math.floor(y)), 2, hoverCandidates);
+    DrawObject best = null;
+    for (DrawObject obj : hoverCandidates) {
+      if (obj.drawOrder > (best == null ? -1 : best.drawOrder)
+          && Math.abs(x - obj.getDrawX() - 0.5) < 0.5
+          && Math.abs(y - obj.getDrawY() - 0.5) < 0.5) {
+        best = obj;
+      }
+    }
+    hoverCandidates.clear();
+    return best;
+  }
+
   // HORRIBLE HACK
   public void addMiningAnim(final MapLocation loc, final float oreAmount) {
 	  miningAnimations.add(new MiningAnim(loc, oreAmount, currentRound));
   }
+
+  /**
+   * Brings the shared ore image up to date with this state, redrawing only
+   * the cells that changed since it was last drawn from this state, and
+   * draws it over the map.
+   */
+  private void drawOreDensities(Graphics2D g2) {
+    int width = gameMap.getWidth();
+    int height = gameMap.getHeight();
+    double threshold = 0;
+    if (RenderConfiguration.threshCows()) {
+      threshold = Math.max(5, .1 * getMaxOreDensity());
+    }
+    if (oreBlitImage == null
+        || oreBlitImage.getWidth() != width * ORE_CELL_PIXELS
+        || oreBlitImage.getHeight() != height * ORE_CELL_PIXELS) {
+      oreBlitImage = new BufferedImage(width * ORE_CELL_PIXELS, height * ORE_CELL_PIXELS,
+                                       BufferedImage.TYPE_INT_ARGB);
+      oreBlitSource = new WeakReference<Object>(null);
+    }
+    if (oreBlitSource.get() != oreLayerSource || oreBlitThreshold != threshold) {
+      paintOreDensities(0, 0, width - 1, height - 1, threshold);
+      oreBlitSource = new WeakReference<Object>(oreLayerSource);
+      oreBlitThreshold = threshold;
+    }
+    else if (oreDirtyMaxX >= oreDirtyMinX) {
+      paintOreDensities(oreDirtyMinX, oreDirtyMinY, oreDirtyMaxX, oreDirtyMaxY, threshold);
+    }
+    clearOreDirty();
+    g2.drawImage(oreBlitImage, gameMap.getMapOrigin().x, gameMap.getMapOrigin().y,
+                 width, height, null);
+  }
+
+  private void paintOreDensities(int minX, int minY, int maxX, int maxY, double threshold) {
+    Graphics2D g = oreBlitImage.createGraphics();
+    g.setComposite(AlphaComposite.Src);
+    g.setColor(oreClear);
+    g.fillRect(minX * ORE_CELL_PIXELS, minY * ORE_CELL_PIXELS,
+               (maxX - minX + 1) * ORE_CELL_PIXELS, (maxY - minY + 1) * ORE_CELL_PIXELS);
+    g.setComposite(AlphaComposite.SrcOver);
+    g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    g.setColor(oreColor);
+    // cap at the max possible size
+    float maxSize = .45f;
+    float maxPossible = gameMap.getMaxInitialOre();
+    Rectangle2D.Float square = new Rectangle2D.Float();
+    for (int y = minY; y <= maxY; y++) {
+      for (int x = minX; x <= maxX; x++) {
+        double density = getOreDensity(x, y) - threshold;
+        if (density <= 0) {
+          continue;
+        }
+        float size = (float) Math.min(Math.sqrt(density / maxPossible), 1.0f);
+        size *= maxSize * ORE_CELL_PIXELS;
+        // make appear at the center
+        float offset = (ORE_CELL_PIXELS - size) / 2;
+        square.setRect(x * ORE_CELL_PIXELS + offset, y * ORE_CELL_PIXELS + offset, size, size);
+        g.fill(square);
+      }
+    }
+    g.dispose();
+  }
 }
@@ -10,6 +10,7 @@ import battlecode.world.GameMap;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.*;
+import java.awt.image.BufferedImage;
 import java.util.*;
 
 public class GameRenderer extends BaseRenderer {
@@ -36,6 +37,11 @@ public class GameRenderer extends BaseRenderer {
   private ImageFile teamA, teamB, winnerImage;
   private FramerateTracker fps = new FramerateTracker(30);
   private int targetID = -1;
+  // the parts of the frame that change at most once a round, cached at
+  // canvas resolution and drawn in this order under the robots
+  private final Layer background = new Layer(); // map and gridlines
+  private final Layer hud = new Layer();
+  private final Layer overlays = new Layer(); // ore and fog of war
   static private boolean loadedPrefsAlready = false;
   private final MatchListener ml = new MatchListener() {
 
@@ -70,7 +76,8 @@ public class GameRenderer extends BaseRenderer {
       e.printStackTrace();
     }
 
-    timeline = new GameStateTimeline<DrawState>(match, DrawState.FACTORY, 10);
+    timeline = new GameStateTimeline<DrawState>(match, DrawState.FACTORY,
+                                               KeyFramePolicy.fromConfig());
     timeline.setTargetState(ds);
     match.addMatchListener(ml);
     match.addMatchPausedListener(ml);
@@ -229,6 +236,8 @@ public class GameRenderer extends BaseRenderer {
     sideA.setWins(aWins, bWins);
     sideB.setWins(aWins, bWins);
     //sideA.setPointsText();
+    sideB.setFooterText(String.format("%04d",
+                                      Math.max(maxRounds - timeline.getRound(),0)));
 
     AffineTransform pushed = g2.getTransform();
     {
@@ -239,8 +248,6 @@ public class GameRenderer extends BaseRenderer {
     {
       g2.translate(/*unitWidth - */unitHUDwidth, 0);
       g2.transform(hudScale);
-      sideB.setFooterText(String.format("%04d",
-                                        Math.max(maxRounds - timeline.getRound(),0)));
       sideB.draw(g2);
     }
     g2.setTransform(pushed);
@@ -256,25 +263,121 @@ public class GameRenderer extends BaseRenderer {
     return debugState;
   }
 
-  private void drawState(Graphics2D g2, boolean isGraphicsStable) {
+  /**
+   * @param layered whether the map, ore and fog of war have already been
+   * drawn from their layers
+   */
+  private void drawState(Graphics2D g2, boolean isGraphicsStable, boolean layered) {
     if (drawMap == null || ds == null) {
       return;
     } // just in case
     AffineTransform pushed = g2.getTransform();
     {
       g2.translate(unitHUDwidth * 2, 0);
-      drawMap.draw(g2, ds);
+      if (!layered) {
+        drawMap.draw(g2, ds);
+      }
       g2.clip(clipRect);
       g2.translate(-origin.x, -origin.y);
       if (isGraphicsStable) {
         RenderConfiguration.getInstance().updateMapTransform(g2.getTransform());
       }
-      ds.draw(g2, debugState);
+      ds.draw(g2, debugState, !layered);
       g2.setClip(null);
     }
     g2.setTransform(pushed);
   }
 
+  /**
+   * An offscreen image of part of the frame, and what it was drawn from.
+   */
+  private static final class Layer {
+    private BufferedImage image;
+    private Object key;
+
+    /**
+     * @param key describes everything the layer's contents depend on, or
+     * null if it is not known to be unchanged
+     * @return a cleared graphics to redraw the layer with, or null if it
+     * already holds what key describes
+     */
+    Graphics2D update(Graphics2D target, Dimension size, Object key) {
+      if (image == null || image.getWidth() != size.width
+          || image.getHeight() != size.height) {
+        image = target.getDeviceConfiguration()
+          .createCompatibleImage(size.width, size.height, Transparency.TRANSLUCENT);
+      }
+      else if (key != null && key.equals(this.key)) {
+        return null;
+      }
+      this.key = key;
+      Graphics2D g = image.createGraphics();
+      g.setRenderingHints(target.getRenderingHints());
+      g.setComposite(AlphaComposite.Clear);
+      g.fillRect(0, 0, size.width, size.height);
+      g.setComposite(AlphaComposite.SrcOver);
+      return g;
+    }
+
+    void draw(Graphics2D g2) {
+      g2.drawImage(image, 0, 0, null);
+    }
+  }
+
+  /**
+   * Draws the background, HUD and overlay layers onto an untransformed
+   * canvas, redrawing each only if what it shows has changed.
+   */
+  private void drawLayers(Graphics2D g2) {
+    boolean started = timeline.getRound() >= 0;
+    Object view = Arrays.<Object>asList(canvasSize, spriteSize, unitOffX, unitOffY);
+
+    Graphics2D g = background.update(g2, canvasSize, Arrays.<Object>asList(
+        view, started, drawMap, drawMap == null ? 0 : drawMap.getVersion(),
+        RenderConfiguration.showGridlines()));
+    if (g != null) {
+      g.setColor(Color.BLACK);
+      g.fill(new Rectangle(0, 0, canvasSize.width, canvasSize.height));
+      if (started && drawMap != null) {
+        g.scale(spriteSize, spriteSize);
+        g.translate(unitOffX + unitHUDwidth * 2, unitOffY);
+        drawMap.draw(g, ds);
+      }
+      g.dispose();
+    }
+    background.draw(g2);
+    if (!started) {
+      return;
+    }
+
+    g = hud.update(g2, canvasSize, Arrays.<Object>asList(
+        view, drawMap, ds.getModCount(), timeline.getRound(), aWins, bWins,
+        match.getTeamA(), match.getTeamB()));
+    if (g != null) {
+      g.scale(spriteSize, spriteSize);
+      g.translate(unitOffX, unitOffY);
+      drawHUD(g);
+      g.dispose();
+    }
+    hud.draw(g2);
+
+    if (drawMap == null) {
+      return;
+    }
+    Object overlayKey = ds.getOverlayKey();
+    g = overlays.update(g2, canvasSize, overlayKey == null ? null
+                        : Arrays.<Object>asList(view, drawMap, overlayKey));
+    if (g != null) {
+      g.scale(spriteSize, spriteSize);
+      g.translate(unitOffX + unitHUDwidth * 2, unitOffY);
+      g.clip(clipRect);
+      g.translate(-origin.x, -origin.y);
+      ds.drawOverlays(g);
+      g.dispose();
+    }
+    overlays.draw(g2);
+  }
+
   public void draw(Graphics g) {
     // remove if anything breaks
 
@@ -289,14 +392,23 @@ public class GameRenderer extends BaseRenderer {
 
 
     boolean isGraphicsStable = g2.getTransform().isIdentity();
-    g2.setColor(Color.BLACK);
-    g2.fill(new Rectangle(0, 0, canvasSize.width, canvasSize.height));
+    // the layers are cached at the canvas' own resolution, so they are only
+    // used when drawing straight to it
+    if (isGraphicsStable) {
+      drawLayers(g2);
+    }
+    else {
+      g2.setColor(Color.BLACK);
+      g2.fill(new Rectangle(0, 0, canvasSize.width, canvasSize.height));
+    }
     AffineTransform pushed = g2.getTransform();
     g2.scale(spriteSize, spriteSize);
     g2.translate(unitOffX, unitOffY);
     if (timeline.getRound() >= 0) {
-      drawHUD(g2);
-      drawState(g2, isGraphicsStable);
+      if (!isGraphicsStable) {
+        drawHUD(g2);
+      }
+      drawState(g2, isGraphicsStable, isGraphicsStable);
     }
     g2.setTransform(pushed);
     //g2.scale(spriteSize, spriteSize);
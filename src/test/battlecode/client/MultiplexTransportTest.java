@@ -0,0 +1,218 @@
+package battlecode.client;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MultiplexTransportTest {
+
+	private static final int WINDOW = 1 << 14;
+	private static final int OBJECTS = 5000;
+
+	private ServerSocket listening;
+	private MultiplexTransport transport;
+
+	// how each stream ended: the number of objects read, or -1 on failure
+	private final Map<Integer, Integer> results = new HashMap<Integer, Integer>();
+
+	/**
+	 * The server end of a connection: writes frames, and tracks the credit
+	 * and CLOSE frames the client sends back.
+	 */
+	private static final class Server {
+		final DataOutputStream out;
+		final Map<Integer, Integer> credit = new HashMap<Integer, Integer>();
+		final Set<Integer> closed = new HashSet<Integer>();
+
+		Server(Socket socket) throws IOException {
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			final DataInputStream in = new DataInputStream(socket.getInputStream());
+			Thread reader = new Thread() {
+				public void run() {
+					try {
+						while (true) {
+							int stream = in.readInt();
+							int kind = in.readByte();
+							byte[] payload = new byte[in.readInt()];
+							in.readFully(payload);
+							synchronized (Server.this) {
+								if (kind == MultiplexTransport.CREDIT) {
+									Integer c = credit.get(stream);
+									credit.put(stream, (c == null ? 0 : c) + ByteBuffer.wrap(payload).getInt());
+								}
+								else if (kind == MultiplexTransport.CLOSE) {
+									closed.add(stream);
+								}
+								Server.this.notifyAll();
+							}
+						}
+					}
+					catch (IOException e) {}
+				}
+			};
+			reader.setDaemon(true);
+			reader.start();
+		}
+
+		void frame(int stream, int kind, byte[] payload, int off, int len) throws IOException {
+			out.writeInt(stream);
+			out.writeByte(kind);
+			out.writeInt(len);
+			out.write(payload, off, len);
+			out.flush();
+		}
+
+		// sends a whole stream as DATA, waiting for credit as it goes
+		void send(int stream, byte[] data) throws IOException, InterruptedException {
+			int pos = 0;
+			while (pos < data.length) {
+				int n;
+				synchronized (this) {
+					Integer c;
+					while ((c = credit.get(stream)) == null || c == 0) {
+						wait();
+					}
+					n = Math.min(c, Math.min(4096, data.length - pos));
+					credit.put(stream, c - n);
+				}
+				frame(stream, MultiplexTransport.DATA, data, pos, n);
+				pos += n;
+			}
+		}
+
+		synchronized boolean awaitClosed(int stream) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + 10000;
+			while (!closed.contains(stream) && System.currentTimeMillis() < deadline) {
+				wait(100);
+			}
+			return closed.contains(stream);
+		}
+	}
+
+	private static byte[] matchStream() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		for (int i = 0; i < OBJECTS; i++) {
+			out.writeObject("object " + i);
+		}
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	@Before
+	public void listen() throws IOException {
+		listening = new ServerSocket(0);
+	}
+
+	@After
+	public void close() throws IOException {
+		if (transport != null) {
+			transport.close();
+		}
+		listening.close();
+	}
+
+	private synchronized void ended(int stream, int objects) {
+		results.put(stream, objects);
+		notifyAll();
+	}
+
+	private synchronized Integer awaitResult(int stream) throws InterruptedException {
+		while (!results.containsKey(stream)) {
+			wait();
+		}
+		return results.get(stream);
+	}
+
+	private Server connect() throws IOException {
+		transport = MultiplexTransport.connect(new InetSocketAddress("localhost", listening.getLocalPort()),
+		                                       WINDOW, new MultiplexTransport.Listener() {
+			public void streamOpened(int stream, ClientProxy proxy) {
+				int n = 0;
+				try {
+					while (true) {
+						assertEquals("object " + n, proxy.readObject());
+						n++;
+					}
+				}
+				catch (EOFException e) {
+					ended(stream, n);
+					return;
+				}
+				catch (RuntimeException e) {}
+				ended(stream, -1);
+			}
+		});
+		return new Server(listening.accept());
+	}
+
+	@Test(timeout = 30000)
+	public void carriesStreamsSideBySide() throws Exception {
+		Server server = connect();
+		byte[] data = matchStream();
+		assertTrue("the test stream must need several windows", data.length > 2 * WINDOW);
+		server.frame(1, MultiplexTransport.OPEN, data, 0, 0);
+		server.frame(2, MultiplexTransport.OPEN, data, 0, 0);
+		server.send(1, data);
+		server.send(2, data);
+		server.frame(1, MultiplexTransport.CLOSE, data, 0, 0);
+		server.frame(2, MultiplexTransport.CLOSE, data, 0, 0);
+		assertEquals(Integer.valueOf(OBJECTS), awaitResult(1));
+		assertEquals(Integer.valueOf(OBJECTS), awaitResult(2));
+	}
+
+	@Test(timeout = 30000)
+	public void failsOnlyTheStreamThatBreaksTheRules() throws Exception {
+		Server server = connect();
+		byte[] data = matchStream();
+		server.frame(1, MultiplexTransport.OPEN, data, 0, 0);
+		server.frame(2, MultiplexTransport.OPEN, data, 0, 0);
+		// stream 2 ignores its credit and overruns its window
+		for (int sent = 0; sent <= WINDOW; sent += 4096) {
+			server.frame(2, MultiplexTransport.DATA, data, sent, 4096);
+		}
+		// streams that were never opened are ignored
+		server.frame(9, MultiplexTransport.DATA, data, 0, 10);
+		assertTrue(server.awaitClosed(2));
+		server.send(1, data);
+		server.frame(1, MultiplexTransport.CLOSE, data, 0, 0);
+		assertEquals(Integer.valueOf(OBJECTS), awaitResult(1));
+		// stream 2 either failed while its proxy read the header, or later
+		synchronized (this) {
+			Integer second = results.get(2);
+			assertTrue(second == null || second == -1);
+		}
+	}
+
+	@Test(timeout = 30000)
+	public void losingTheFramingEndsEveryStream() throws Exception {
+		Server server = connect();
+		byte[] data = matchStream();
+		server.frame(1, MultiplexTransport.OPEN, data, 0, 0);
+		server.frame(1, MultiplexTransport.DATA, data, 0, 4096);
+		// no frame may be longer than a window
+		server.out.writeInt(1);
+		server.out.writeByte(MultiplexTransport.DATA);
+		server.out.writeInt(WINDOW + 1);
+		server.out.flush();
+		assertEquals(Integer.valueOf(-1), awaitResult(1));
+	}
+}
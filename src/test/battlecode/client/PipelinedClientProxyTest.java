@@ -0,0 +1,184 @@
+package battlecode.client;
+
+import static org.junit.Assert.*;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Test;
+
+import battlecode.client.replay.ReplayFile;
+import battlecode.client.replay.ReplayWriter;
+import battlecode.engine.signal.Signal;
+import battlecode.serial.RoundDelta;
+
+public class PipelinedClientProxyTest {
+
+	static class Step extends Signal {
+		int robot;
+		int[] payload;
+
+		Step(int robot) {
+			this.robot = robot;
+			this.payload = new int[200];
+			for (int i = 0; i < payload.length; i++) {
+				payload[i] = robot * i + i * i;
+			}
+		}
+	}
+
+	private static final int ROUNDS = 3000;
+
+	private File path;
+
+	@After
+	public void deleteFile() {
+		if (path != null) {
+			path.delete();
+		}
+	}
+
+	private static RoundDelta round(int n) {
+		return new RoundDelta(new Signal[] { new Step(n), new Step(-n) });
+	}
+
+	private void writeStream() throws IOException {
+		path = File.createTempFile("pipeline-test", ".rms");
+		ObjectOutputStream out = new ObjectOutputStream(
+			new GZIPOutputStream(new FileOutputStream(path)));
+		for (int n = 0; n < ROUNDS; n++) {
+			out.writeObject(round(n));
+			// keep the stream from sharing signals between rounds
+			out.reset();
+		}
+		out.close();
+	}
+
+	private void writeReplay() throws IOException {
+		path = File.createTempFile("pipeline-test", ReplayFile.EXTENSION);
+		ReplayWriter writer = new ReplayWriter(path.getPath());
+		for (int n = 0; n < ROUNDS; n++) {
+			writer.write(round(n));
+		}
+		writer.close();
+	}
+
+	// overwrites a stretch in the middle of the file
+	private void corrupt() throws IOException {
+		RandomAccessFile f = new RandomAccessFile(path, "rw");
+		try {
+			long middle = f.length() / 2;
+			f.seek(middle);
+			for (int i = 0; i < 4096; i++) {
+				f.write(0x55);
+			}
+		}
+		finally {
+			f.close();
+		}
+	}
+
+	private static void assertRound(int n, Object o) {
+		Signal[] signals = ((RoundDelta) o).getSignals();
+		assertEquals(2, signals.length);
+		Step step = (Step) signals[0];
+		assertEquals(n, step.robot);
+		assertEquals(n * 7 + 49, step.payload[7]);
+		assertEquals(-n, ((Step) signals[1]).robot);
+	}
+
+	private static void readAll(ClientProxy proxy) throws EOFException {
+		for (int n = 0; n < ROUNDS; n++) {
+			assertRound(n, proxy.peekObject());
+			assertRound(n, proxy.readObject());
+		}
+		try {
+			proxy.readObject();
+			fail("read past the end");
+		}
+		catch (EOFException e) {}
+		try {
+			proxy.readObject();
+			fail("read past the end twice");
+		}
+		catch (EOFException e) {}
+	}
+
+	// reads until the failure, which must come before the end of the file
+	private static void readUntilFailure(ClientProxy proxy) throws EOFException {
+		int n = 0;
+		try {
+			for (; n < ROUNDS; n++) {
+				assertRound(n, proxy.readObject());
+			}
+		}
+		catch (RuntimeException e) {
+			assertTrue(n < ROUNDS);
+			return;
+		}
+		fail("read a corrupt file to the end");
+	}
+
+	@Test(timeout = 30000)
+	public void readsAStreamInOrder() throws IOException {
+		writeStream();
+		readAll(PipelinedClientProxy.open(path.getPath(), 2));
+	}
+
+	@Test(timeout = 30000)
+	public void readsAnIndexedFileInOrder() throws IOException {
+		writeReplay();
+		readAll(PipelinedClientProxy.open(path.getPath(), 3));
+	}
+
+	@Test(timeout = 30000)
+	public void stopsOnACorruptStream() throws IOException {
+		writeStream();
+		corrupt();
+		readUntilFailure(PipelinedClientProxy.open(path.getPath(), 2));
+	}
+
+	@Test(timeout = 30000)
+	public void stopsOnACorruptBlock() throws IOException {
+		writeReplay();
+		corrupt();
+		readUntilFailure(PipelinedClientProxy.open(path.getPath(), 3));
+	}
+
+	@Test(timeout = 30000)
+	public void endsWhenClosed() throws IOException, InterruptedException {
+		writeReplay();
+		PipelinedClientProxy proxy = PipelinedClientProxy.open(path.getPath(), 2);
+		assertRound(0, proxy.readObject());
+		// let the stages fill their queues and block
+		Thread.sleep(200);
+		proxy.close();
+		try {
+			proxy.readObject();
+			fail("read after close");
+		}
+		catch (EOFException e) {}
+		// the loader threads must all get out
+		long deadline = System.currentTimeMillis() + 10000;
+		while (loaderThreads() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertEquals(0, loaderThreads());
+	}
+
+	private static int loaderThreads() {
+		int n = 0;
+		for (Thread t : Thread.getAllStackTraces().keySet()) {
+			if (t.getName().equals("match-loader") && t.isAlive()) {
+				n++;
+			}
+		}
+		return n;
+	}
+}
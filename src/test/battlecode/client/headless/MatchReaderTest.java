@@ -0,0 +1,164 @@
+package battlecode.client.headless;
+
+import static org.junit.Assert.*;
+
+import java.io.EOFException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import battlecode.client.ClientProxy;
+import battlecode.common.Team;
+import battlecode.engine.signal.Signal;
+import battlecode.serial.ExtensibleMetadata;
+import battlecode.serial.GameStats;
+import battlecode.serial.MatchFooter;
+import battlecode.serial.MatchHeader;
+import battlecode.serial.RoundDelta;
+import battlecode.serial.RoundStats;
+import battlecode.serial.notification.Notification;
+
+public class MatchReaderTest {
+
+	static class Mark extends Signal {
+		final String name;
+
+		Mark(String name) {
+			this.name = name;
+		}
+	}
+
+	/** Serves a fixed list of objects. */
+	static class ListProxy implements ClientProxy {
+		private final List<Object> objects;
+		private int next = 0;
+
+		ListProxy(Object... objects) {
+			this.objects = Arrays.asList(objects);
+		}
+
+		public Object readObject() throws EOFException {
+			if (next == objects.size()) {
+				throw new EOFException();
+			}
+			return objects.get(next++);
+		}
+
+		public Object peekObject() throws EOFException {
+			if (next == objects.size()) {
+				throw new EOFException();
+			}
+			return objects.get(next);
+		}
+
+		public boolean isDebuggingAvailable() {
+			return false;
+		}
+
+		public void writeNotification(Notification n) {
+		}
+
+		public void writeSignal(Signal s) {
+		}
+
+		public void close() {
+		}
+	}
+
+	/** Writes down what it visits, one line per call. */
+	static class Recorder extends MatchVisitor {
+		final List<String> visits = new ArrayList<String>();
+
+		public void visitHeader(MatchHeader header) {
+			visits.add("header");
+		}
+
+		public void visitMetadata(ExtensibleMetadata metadata) {
+			visits.add("metadata");
+		}
+
+		public void visitRound(int round, RoundDelta delta) {
+			StringBuilder sb = new StringBuilder("round " + round + ":");
+			for (Signal s : delta.getSignals()) {
+				sb.append(' ').append(((Mark) s).name);
+			}
+			visits.add(sb.toString());
+		}
+
+		public void visitStats(int round, RoundStats stats) {
+			visits.add("stats " + round);
+		}
+
+		public void visitGameStats(GameStats stats) {
+			visits.add("game stats");
+		}
+
+		public void visitFooter(MatchFooter footer) {
+			visits.add("footer");
+		}
+	}
+
+	private static MatchHeader header() {
+		return new MatchHeader(null, null, 0, 1);
+	}
+
+	private static RoundDelta round(String... names) {
+		Signal[] signals = new Signal[names.length];
+		for (int i = 0; i < names.length; i++) {
+			signals[i] = new Mark(names[i]);
+		}
+		return new RoundDelta(signals);
+	}
+
+	private static RoundStats stats() {
+		return new RoundStats(new double[2], new double[2]);
+	}
+
+	private static MatchFooter footer() {
+		return new MatchFooter(Team.A, null);
+	}
+
+	private static List<String> list(String... s) {
+		return Arrays.asList(s);
+	}
+
+	@Test
+	public void visitsAMatchInOrder() throws EOFException {
+		Recorder recorder = new Recorder();
+		MatchReader reader = new MatchReader(new ListProxy(
+			new ExtensibleMetadata(), header(), round("a"), stats(), round(), stats(),
+			new GameStats(), footer()));
+		assertTrue(reader.readMatch(recorder));
+		assertEquals(list("metadata", "header", "round 0: a", "stats 0", "round 1:", "stats 1",
+		                  "game stats", "footer"), recorder.visits);
+		assertFalse(reader.readMatch(recorder));
+	}
+
+	@Test
+	public void foldsBreakSignalsIntoTheNextRound() throws EOFException {
+		Recorder recorder = new Recorder();
+		MatchReader reader = new MatchReader(new ListProxy(
+			header(), round("a"), new Signal[] { new Mark("x") }, new Signal[] { new Mark("y") },
+			round("b"), round("c"), footer()));
+		reader.readMatch(recorder);
+		assertEquals(list("header", "round 0: a", "round 1: x y b", "round 2: c", "footer"),
+		             recorder.visits);
+	}
+
+	@Test
+	public void readsEveryMatch() throws EOFException {
+		Recorder recorder = new Recorder();
+		MatchReader reader = new MatchReader(new ListProxy(
+			header(), round("a"), footer(), "ignored", header(), round("b"), round("c"), footer()));
+		assertEquals(2, reader.readAll(recorder));
+		assertEquals(list("header", "round 0: a", "footer", "header", "round 0: b", "round 1: c", "footer"),
+		             recorder.visits);
+	}
+
+	@Test(expected = EOFException.class)
+	public void failsOnATruncatedMatch() throws EOFException {
+		new MatchReader(new ListProxy(header(), round("a"))).readMatch(new Recorder());
+	}
+}
@@ -0,0 +1,170 @@
+package battlecode.client.replay;
+
+import static org.junit.Assert.*;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import battlecode.client.IndexedClientProxy;
+import battlecode.common.MapLocation;
+import battlecode.common.Team;
+import battlecode.engine.signal.Signal;
+import battlecode.serial.MatchFooter;
+import battlecode.serial.MatchHeader;
+import battlecode.serial.RoundDelta;
+
+public class ReplayFileTest {
+
+	static class Step extends Signal {
+		int robot;
+		MapLocation to;
+		int[] payload;
+
+		Step(int robot, MapLocation to) {
+			this.robot = robot;
+			this.to = to;
+			this.payload = new int[100];
+			for (int i = 0; i < payload.length; i++) {
+				payload[i] = robot ^ (i * 7919);
+			}
+		}
+	}
+
+	private static final int[] ROUNDS = { 300, 7 };
+
+	private File path;
+	// what was written, in order, with rounds as their first robot id
+	private List<Object> written = new ArrayList<Object>();
+
+	@Before
+	public void writeFile() throws IOException {
+		path = File.createTempFile("replay-test", ReplayFile.EXTENSION);
+		path.deleteOnExit();
+		ReplayWriter writer = new ReplayWriter(path.getPath());
+		for (int m = 0; m < ROUNDS.length; m++) {
+			write(writer, new MatchHeader(null, null, m, ROUNDS.length));
+			write(writer, "match " + m);
+			for (int r = 0; r < ROUNDS[m]; r++) {
+				Signal[] signals = new Signal[4];
+				for (int i = 0; i < signals.length; i++) {
+					signals[i] = new Step(m * 100000 + r * 10 + i, new MapLocation(r, i - m));
+				}
+				write(writer, new RoundDelta(signals));
+			}
+			write(writer, new MatchFooter(Team.A, null));
+		}
+		writer.close();
+	}
+
+	private void write(ReplayWriter writer, Object o) throws IOException {
+		writer.write(o);
+		written.add(o);
+	}
+
+	@After
+	public void deleteFile() {
+		path.delete();
+	}
+
+	private void assertSameObject(Object expected, Object actual) {
+		if (expected instanceof RoundDelta) {
+			Signal[] e = ((RoundDelta) expected).getSignals();
+			Signal[] a = ((RoundDelta) actual).getSignals();
+			assertEquals(e.length, a.length);
+			for (int i = 0; i < e.length; i++) {
+				Step es = (Step) e[i];
+				Step as = (Step) a[i];
+				assertEquals(es.robot, as.robot);
+				assertEquals(es.to, as.to);
+				assertArrayEquals(es.payload, as.payload);
+			}
+		}
+		else if (expected instanceof String) {
+			assertEquals(expected, actual);
+		}
+		else {
+			assertEquals(expected.getClass(), actual.getClass());
+		}
+	}
+
+	@Test
+	public void indexesMatchesAndRounds() throws IOException {
+		assertTrue(ReplayFile.isReplayFile(path.getPath()));
+		ReplayFile file = new ReplayFile(path.getPath());
+		try {
+			assertEquals(ROUNDS.length, file.getMatchCount());
+			assertTrue("expected several blocks", file.getBlockCount() > 2);
+			for (int m = 0; m < ROUNDS.length; m++) {
+				assertEquals(ROUNDS[m], file.getRoundCount(m));
+				// each match starts its own block with its header
+				Object[] first = file.readBlock(file.getMatchFirstBlock(m));
+				assertTrue(first[0] instanceof MatchHeader);
+				assertEquals("match " + m, first[1]);
+			}
+		}
+		finally {
+			file.close();
+		}
+	}
+
+	@Test
+	public void blocksHoldEveryObjectInOrder() throws IOException {
+		ReplayFile file = new ReplayFile(path.getPath());
+		try {
+			int n = 0;
+			for (int block = 0; block < file.getBlockCount(); block++) {
+				for (Object o : file.readBlock(block)) {
+					assertSameObject(written.get(n++), o);
+				}
+			}
+			assertEquals(written.size(), n);
+		}
+		finally {
+			file.close();
+		}
+	}
+
+	@Test
+	public void proxyReadsTheStreamBack() throws IOException {
+		IndexedClientProxy proxy = new IndexedClientProxy(path.getPath());
+		try {
+			assertFalse(proxy.isDebuggingAvailable());
+			for (Object expected : written) {
+				assertSameObject(expected, proxy.peekObject());
+				assertSameObject(expected, proxy.readObject());
+			}
+			try {
+				proxy.readObject();
+				fail("read past the end");
+			}
+			catch (EOFException e) {}
+		}
+		finally {
+			proxy.close();
+		}
+	}
+
+	@Test
+	public void refusesOtherFiles() throws IOException {
+		File other = File.createTempFile("replay-test", ".rms");
+		other.deleteOnExit();
+		try {
+			assertFalse(ReplayFile.isReplayFile(other.getPath()));
+			try {
+				new ReplayFile(other.getPath()).close();
+				fail("opened an empty file");
+			}
+			catch (IOException e) {}
+		}
+		finally {
+			other.delete();
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package battlecode.client.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IntObjectMapTest {
+
+	private static List<String> values(IntObjectMap<String> map) {
+		List<String> out = new ArrayList<String>();
+		for (String s : map) {
+			out.add(s);
+		}
+		return out;
+	}
+
+	private static List<String> list(String... s) {
+		List<String> out = new ArrayList<String>();
+		for (String e : s) {
+			out.add(e);
+		}
+		return out;
+	}
+
+	@Test
+	public void iteratesInInsertionOrder() {
+		IntObjectMap<String> map = new IntObjectMap<String>();
+		map.put(30, "a");
+		map.put(-4, "b");
+		map.put(7, "c");
+		assertEquals(list("a", "b", "c"), values(map));
+		assertEquals("b", map.get(-4));
+		assertNull(map.get(5));
+		assertTrue(map.containsKey(7));
+		assertFalse(map.containsKey(8));
+	}
+
+	@Test
+	public void replacingAValueKeepsItsPlace() {
+		IntObjectMap<String> map = new IntObjectMap<String>();
+		map.put(1, "a");
+		map.put(2, "b");
+		assertEquals("a", map.put(1, "A"));
+		assertEquals(2, map.size());
+		assertEquals(list("A", "b"), values(map));
+	}
+
+	@Test
+	public void skipsRemovedEntries() {
+		IntObjectMap<String> map = new IntObjectMap<String>();
+		map.put(1, "a");
+		map.put(2, "b");
+		map.put(3, "c");
+		assertEquals("b", map.remove(2));
+		assertNull(map.remove(2));
+		assertEquals(2, map.size());
+		assertFalse(map.containsKey(2));
+		assertEquals(list("a", "c"), values(map));
+		// a key put back after removal goes to the end
+		map.put(2, "B");
+		assertEquals(list("a", "c", "B"), values(map));
+	}
+
+	@Test
+	public void keepsOrderWhenGrowing() {
+		IntObjectMap<String> map = new IntObjectMap<String>(4);
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 1000; i++) {
+			map.put(i * 1024, "v" + i);
+			expected.add("v" + i);
+			if (i % 3 == 0) {
+				map.remove(i * 1024);
+				expected.remove("v" + i);
+			}
+		}
+		assertEquals(expected.size(), map.size());
+		assertEquals(expected, values(map));
+	}
+
+	@Test
+	public void iteratorRemovesTheLastElement() {
+		IntObjectMap<String> map = new IntObjectMap<String>();
+		map.put(1, "a");
+		map.put(2, "b");
+		map.put(3, "c");
+		Iterator<String> it = map.iterator();
+		it.next();
+		it.next();
+		it.remove();
+		try {
+			it.remove();
+			fail("removed twice");
+		}
+		catch (IllegalStateException e) {}
+		assertEquals("c", it.next());
+		assertFalse(it.hasNext());
+		assertEquals(list("a", "c"), values(map));
+		assertFalse(map.containsKey(2));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsNullValues() {
+		new IntObjectMap<String>().put(1, null);
+	}
+
+	@Test
+	public void isEmptyAfterClear() {
+		IntObjectMap<String> map = new IntObjectMap<String>();
+		map.put(1, "a");
+		map.put(2, "b");
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get(1));
+		assertFalse(map.iterator().hasNext());
+		map.put(2, "c");
+		assertEquals(list("c"), values(map));
+	}
+
+	@Test
+	public void behavesLikeALinkedHashMap() {
+		Random random = new Random(42);
+		IntObjectMap<String> map = new IntObjectMap<String>();
+		Map<Integer, String> reference = new LinkedHashMap<Integer, String>();
+		for (int step = 0; step < 100000; step++) {
+			int key = random.nextInt(500) - 250;
+			if (random.nextInt(3) == 0) {
+				assertEquals(reference.remove(key), map.remove(key));
+			}
+			else {
+				String value = "s" + step;
+				assertEquals(reference.put(key, value), map.put(key, value));
+			}
+			assertEquals(reference.size(), map.size());
+		}
+		assertEquals(new ArrayList<String>(reference.values()), values(map));
+		for (int key = -250; key < 250; key++) {
+			assertEquals(reference.get(key), map.get(key));
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package battlecode.client.util;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import battlecode.common.MapLocation;
+import battlecode.common.Team;
+import battlecode.engine.signal.Signal;
+
+public class SignalCodecTest {
+
+	/** A signal with a field of every kind the codec knows. */
+	static class Everything extends Signal {
+		static int constructed = 0;
+
+		boolean z;
+		byte b;
+		short s;
+		char c;
+		int i;
+		long l;
+		float f;
+		double d;
+		String text;
+		Team team;
+		MapLocation loc;
+		int[] ints;
+		double[] doubles;
+		boolean[] flags;
+		String[] texts;
+		Team[] teams;
+		MapLocation[] locs;
+		// not understood by the codec, so it is serialized
+		Object other;
+		transient int skipped;
+
+		Everything(int n) {
+			constructed++;
+			z = (n % 2 == 0);
+			b = (byte) n;
+			s = (short) -n;
+			c = (char) ('a' + n % 26);
+			i = n * -100003;
+			l = n * 1234567890123L;
+			f = n / 3f;
+			d = -n / 7.0;
+			text = "signal " + n;
+			team = Team.values()[Math.abs(n) % Team.values().length];
+			loc = new MapLocation(n, -n);
+			ints = new int[] { n, -n, Integer.MIN_VALUE, Integer.MAX_VALUE };
+			doubles = new double[] { n, Double.NaN, -0.0 };
+			flags = new boolean[] { true, false, z };
+			texts = new String[] { null, "", text };
+			teams = new Team[] { team, null };
+			locs = new MapLocation[] { null, new MapLocation(n + 1, 2 * n), loc };
+			other = Arrays.asList(n, "x");
+			skipped = n;
+		}
+
+		void assertSame(Everything o) {
+			assertEquals(z, o.z);
+			assertEquals(b, o.b);
+			assertEquals(s, o.s);
+			assertEquals(c, o.c);
+			assertEquals(i, o.i);
+			assertEquals(l, o.l);
+			assertEquals(f, o.f, 0);
+			assertEquals(d, o.d, 0);
+			assertEquals(text, o.text);
+			assertEquals(team, o.team);
+			assertEquals(loc, o.loc);
+			assertArrayEquals(ints, o.ints);
+			assertTrue(Arrays.equals(doubles, o.doubles));
+			assertTrue(Arrays.equals(flags, o.flags));
+			assertArrayEquals(texts, o.texts);
+			assertArrayEquals(teams, o.teams);
+			assertArrayEquals(locs, o.locs);
+			assertEquals(other, o.other);
+			assertEquals(0, o.skipped);
+		}
+	}
+
+	/** A signal with nothing but nulls and empty arrays. */
+	static class Sparse extends Signal {
+		String text;
+		MapLocation loc;
+		int[] ints = new int[0];
+		MapLocation[] locs;
+	}
+
+	/**
+	 * A signal whose serialized form carries more than its fields, so it
+	 * can't be made from a description of its fields alone.
+	 */
+	static class Custom extends Signal {
+		int value;
+		transient int extra;
+
+		Custom(int value, int extra) {
+			this.value = value;
+			this.extra = extra;
+		}
+
+		private void writeObject(ObjectOutputStream out) throws IOException {
+			out.defaultWriteObject();
+			out.writeInt(extra);
+		}
+
+		private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+			in.defaultReadObject();
+			extra = in.readInt();
+		}
+	}
+
+	private static ByteBuffer encode(SignalCodec codec, Signal... signals) {
+		SignalCodec.Output out = new SignalCodec.Output();
+		codec.writeSignals(signals, out);
+		return ByteBuffer.wrap(Arrays.copyOf(out.array(), out.size()));
+	}
+
+	@Test
+	public void roundTripsEveryFieldKind() {
+		SignalCodec codec = new SignalCodec();
+		Signal[] round = new Signal[] { new Everything(1), new Sparse(), new Everything(-77) };
+		Signal[] decoded = codec.readSignals(encode(codec, round));
+		assertEquals(round.length, decoded.length);
+		((Everything) round[0]).assertSame((Everything) decoded[0]);
+		((Everything) round[2]).assertSame((Everything) decoded[2]);
+		Sparse sparse = (Sparse) decoded[1];
+		assertNull(sparse.text);
+		assertNull(sparse.loc);
+		assertEquals(0, sparse.ints.length);
+		assertNull(sparse.locs);
+	}
+
+	@Test
+	public void roundsDecodeIndependently() {
+		SignalCodec codec = new SignalCodec();
+		ByteBuffer first = encode(codec, new Everything(3));
+		ByteBuffer second = encode(codec, new Everything(4), new Everything(5));
+		// locations are coded against the previous one of the same round only
+		Signal[] decoded = codec.readSignals(second);
+		new Everything(4).assertSame((Everything) decoded[0]);
+		new Everything(5).assertSame((Everything) decoded[1]);
+		new Everything(3).assertSame((Everything) codec.readSignals(first)[0]);
+	}
+
+	@Test
+	public void decodingRunsNoConstructors() {
+		SignalCodec codec = new SignalCodec();
+		ByteBuffer round = encode(codec, new Everything(1), new Everything(2));
+		int before = Everything.constructed;
+		codec.readSignals(round);
+		assertEquals(before, Everything.constructed);
+	}
+
+	@Test
+	public void serializesClassesItCantInstantiate() {
+		SignalCodec codec = new SignalCodec();
+		Signal[] decoded = codec.readSignals(encode(codec, new Custom(5, 6), new Everything(2), new Custom(7, 8)));
+		assertEquals(5, ((Custom) decoded[0]).value);
+		assertEquals(6, ((Custom) decoded[0]).extra);
+		new Everything(2).assertSame((Everything) decoded[1]);
+		assertEquals(8, ((Custom) decoded[2]).extra);
+	}
+
+	@Test
+	public void decodesLongRoundsOnManyThreads() throws Exception {
+		final SignalCodec codec = new SignalCodec();
+		final Signal[] round = new Signal[5000];
+		for (int n = 0; n < round.length; n++) {
+			round[n] = (n % 3 == 0 ? new Sparse() : new Everything(n));
+		}
+		final ByteBuffer encoded = encode(codec, round);
+		final Throwable[] failure = new Throwable[1];
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				public void run() {
+					try {
+						for (int pass = 0; pass < 3; pass++) {
+							Signal[] decoded = codec.readSignals(encoded.duplicate());
+							for (int n = 0; n < round.length; n++) {
+								if (round[n] instanceof Everything) {
+									((Everything) round[n]).assertSame((Everything) decoded[n]);
+								}
+								else {
+									assertTrue(decoded[n] instanceof Sparse);
+								}
+							}
+						}
+					}
+					catch (Throwable e) {
+						failure[0] = e;
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		if (failure[0] != null) {
+			throw new AssertionError(failure[0]);
+		}
+	}
+
+	@Test
+	public void readerReplaysTheWritersTags() throws Exception {
+		SignalCodec writer = new SignalCodec();
+		ByteBuffer round = encode(writer, new Sparse(), new Everything(9));
+		SignalCodec reader = new SignalCodec();
+		for (int tag = 0; tag < writer.getTagCount(); tag++) {
+			reader.defineTag(writer.getTagClassName(tag), writer.getTagSignature(tag));
+		}
+		Signal[] decoded = reader.readSignals(round);
+		assertTrue(decoded[0] instanceof Sparse);
+		new Everything(9).assertSame((Everything) decoded[1]);
+	}
+
+	@Test(expected = InvalidClassException.class)
+	public void refusesAClassWithADifferentLayout() throws Exception {
+		SignalCodec writer = new SignalCodec();
+		encode(writer, new Sparse());
+		String signature = writer.getTagSignature(0).replace("text:", "renamed:");
+		new SignalCodec().defineTag(Sparse.class.getName(), signature);
+	}
+}
@@ -0,0 +1,183 @@
+package battlecode.client.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import battlecode.common.MapLocation;
+import battlecode.engine.signal.Signal;
+import battlecode.serial.RoundDelta;
+import battlecode.serial.RoundStats;
+
+/**
+ * Times decoding a match stream written with Java serialization against the
+ * same stream in the binary signal stream format.
+ *
+ * With no arguments the match is synthetic: 2000 rounds of 150 robots, each
+ * round with a third of the robots moving plus health and bytecode signals
+ * for all of them.  Given the path of a saved .rms file, that match is used
+ * instead.  Both streams are decoded from memory, so the times are decoding
+ * alone.  The first passes include JIT warm-up; compare the last few.
+ *
+ * <pre>
+ * java battlecode.client.util.SignalStreamBenchmark [match.rms]
+ * </pre>
+ */
+public class SignalStreamBenchmark {
+
+	private static final int PASSES = 10;
+
+	static class Move extends Signal {
+		int robotID;
+		MapLocation newLoc;
+		boolean isMovingForward;
+		int delay;
+
+		Move(int robotID, MapLocation newLoc) {
+			this.robotID = robotID;
+			this.newLoc = newLoc;
+			this.isMovingForward = true;
+			this.delay = 2;
+		}
+	}
+
+	static class Health extends Signal {
+		int[] robotIDs;
+		double[] health;
+
+		Health(int[] robotIDs, double[] health) {
+			this.robotIDs = robotIDs;
+			this.health = health;
+		}
+	}
+
+	static class Bytecodes extends Signal {
+		int[] robotIDs;
+		int[] numBytecodes;
+
+		Bytecodes(int[] robotIDs, int[] numBytecodes) {
+			this.robotIDs = robotIDs;
+			this.numBytecodes = numBytecodes;
+		}
+	}
+
+	private static List<Object> syntheticMatch() {
+		Random random = new Random(1);
+		List<Object> match = new ArrayList<Object>();
+		for (int round = 0; round < 2000; round++) {
+			List<Signal> signals = new ArrayList<Signal>();
+			int[] ids = new int[150];
+			double[] health = new double[ids.length];
+			int[] bytecodes = new int[ids.length];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = 10000 + i;
+				health[i] = random.nextInt(200);
+				bytecodes[i] = random.nextInt(10000);
+				if (random.nextInt(3) == 0) {
+					signals.add(new Move(ids[i], new MapLocation(13000 + random.nextInt(80),
+					                                             4000 + random.nextInt(80))));
+				}
+			}
+			signals.add(new Health(ids, health));
+			signals.add(new Bytecodes(ids, bytecodes));
+			match.add(new RoundDelta(signals.toArray(new Signal[signals.size()])));
+			match.add(new RoundStats(new double[] { round, 2 }, new double[] { 3, 4 }));
+		}
+		return match;
+	}
+
+	private static List<Object> savedMatch(String path) throws IOException, ClassNotFoundException {
+		InputStream in = new GZIPInputStream(new FileInputStream(path));
+		ObjectInputStream objects = new ObjectInputStream(in);
+		List<Object> match = new ArrayList<Object>();
+		try {
+			while (true) {
+				match.add(objects.readObject());
+			}
+		}
+		catch (EOFException e) {}
+		objects.close();
+		return match;
+	}
+
+	private static byte[] serialize(List<Object> match) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		for (Object o : match) {
+			out.writeObject(o);
+			// the server resets its stream every round too
+			out.reset();
+		}
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static byte[] encode(List<Object> match) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		SignalStreamWriter out = new SignalStreamWriter(bytes);
+		for (Object o : match) {
+			out.write(o);
+		}
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static int readSerialized(byte[] stream) throws IOException, ClassNotFoundException {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(stream));
+		int n = 0;
+		try {
+			while (true) {
+				in.readObject();
+				n++;
+			}
+		}
+		catch (EOFException e) {}
+		return n;
+	}
+
+	private static int readEncoded(byte[] stream) throws IOException {
+		SignalStreamReader in = new SignalStreamReader(new ByteArrayInputStream(stream));
+		int n = 0;
+		try {
+			while (true) {
+				in.readObject();
+				n++;
+			}
+		}
+		catch (EOFException e) {}
+		return n;
+	}
+
+	public static void main(String[] args) throws Exception {
+		List<Object> match = (args.length > 0 ? savedMatch(args[0]) : syntheticMatch());
+		byte[] serialized = serialize(match);
+		byte[] encoded = encode(match);
+		int objects = match.size();
+		// let the match be collected so that it doesn't weigh on the passes
+		match = null;
+		System.out.println(objects + " objects: serialized " + serialized.length
+		                   + " bytes, signal stream " + encoded.length + " bytes");
+		for (int pass = 0; pass < PASSES; pass++) {
+			long start = System.nanoTime();
+			int n = readSerialized(serialized);
+			long serialNanos = System.nanoTime() - start;
+			start = System.nanoTime();
+			int m = readEncoded(encoded);
+			long encodedNanos = System.nanoTime() - start;
+			if (n != objects || m != objects) {
+				throw new IllegalStateException("read " + n + " and " + m + " of " + objects + " objects");
+			}
+			System.out.println("pass " + pass + ": serialized " + serialNanos / 1000000
+			                   + "ms, signal stream " + encodedNanos / 1000000 + "ms");
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package battlecode.client.util;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import battlecode.common.MapLocation;
+import battlecode.engine.signal.Signal;
+import battlecode.serial.RoundDelta;
+import battlecode.serial.RoundStats;
+
+public class SignalStreamTest {
+
+	static class Move extends Signal {
+		int robotID;
+		MapLocation newLoc;
+
+		Move(int robotID, MapLocation newLoc) {
+			this.robotID = robotID;
+			this.newLoc = newLoc;
+		}
+	}
+
+	static class Health extends Signal {
+		int[] robotIDs;
+		double[] health;
+
+		Health(int[] robotIDs, double[] health) {
+			this.robotIDs = robotIDs;
+			this.health = health;
+		}
+	}
+
+	private static byte[] write(Object... objects) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		SignalStreamWriter writer = new SignalStreamWriter(bytes);
+		for (Object o : objects) {
+			writer.write(o);
+		}
+		writer.close();
+		return bytes.toByteArray();
+	}
+
+	private static List<Object> read(byte[] stream) throws IOException {
+		assertTrue(SignalStreamReader.isSignalStream(stream));
+		SignalStreamReader reader = new SignalStreamReader(new ByteArrayInputStream(stream));
+		List<Object> objects = new ArrayList<Object>();
+		try {
+			while (true) {
+				objects.add(reader.readObject());
+			}
+		}
+		catch (EOFException e) {}
+		return objects;
+	}
+
+	private static void assertSignals(Signal[] expected, Signal[] actual) {
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i].getClass(), actual[i].getClass());
+			if (expected[i] instanceof Move) {
+				assertEquals(((Move) expected[i]).robotID, ((Move) actual[i]).robotID);
+				assertEquals(((Move) expected[i]).newLoc, ((Move) actual[i]).newLoc);
+			}
+			else {
+				Health e = (Health) expected[i];
+				Health a = (Health) actual[i];
+				assertArrayEquals(e.robotIDs, a.robotIDs);
+				assertTrue(Arrays.equals(e.health, a.health));
+			}
+		}
+	}
+
+	@Test
+	public void roundTripsEveryRecordKind() throws IOException {
+		Signal[] round = new Signal[] {
+			new Move(5, new MapLocation(3, 4)),
+			new Health(new int[] { 5, 6 }, new double[] { 1.5, 200 }),
+			new Move(6, new MapLocation(-3, 4)),
+		};
+		Signal[] debug = new Signal[] { new Move(7, new MapLocation(0, 0)) };
+		RoundStats stats = new RoundStats(new double[] { 10, 20.5 }, null);
+		List<Object> objects = read(write("header", new RoundDelta(round), stats, debug,
+		                                  new RoundDelta(new Signal[0]), Arrays.asList(1, 2)));
+
+		assertEquals(6, objects.size());
+		assertEquals("header", objects.get(0));
+		assertSignals(round, ((RoundDelta) objects.get(1)).getSignals());
+		RoundStats readStats = (RoundStats) objects.get(2);
+		assertTrue(Arrays.equals(stats.getPoints(), readStats.getPoints()));
+		assertNull(readStats.getGatheredPoints());
+		assertSignals(debug, (Signal[]) objects.get(3));
+		assertEquals(0, ((RoundDelta) objects.get(4)).getSignals().length);
+		assertEquals(Arrays.asList(1, 2), objects.get(5));
+	}
+
+	@Test
+	public void definesEachClassOnce() throws IOException {
+		Signal move = new Move(1, new MapLocation(1, 1));
+		byte[] one = write(new RoundDelta(new Signal[] { move }));
+		byte[] two = write(new RoundDelta(new Signal[] { move }), new RoundDelta(new Signal[] { move }));
+		byte[] three = write(new RoundDelta(new Signal[] { move }), new RoundDelta(new Signal[] { move }),
+		                     new RoundDelta(new Signal[] { move }));
+		// every round after the first costs the same, with no new definition
+		assertEquals(two.length - one.length, three.length - two.length);
+		assertEquals(3, read(three).size());
+	}
+
+	@Test
+	public void refusesOtherStreams() {
+		assertFalse(SignalStreamReader.isSignalStream(new byte[] { (byte) 0xAC, (byte) 0xED, 0, 5 }));
+		assertFalse(SignalStreamReader.isSignalStream(new byte[2]));
+		try {
+			new SignalStreamReader(new ByteArrayInputStream(new byte[] { (byte) 0xAC, (byte) 0xED, 0, 5, 0, 0, 0, 0 }));
+			fail("read a serialized stream");
+		}
+		catch (IOException e) {}
+	}
+
+	@Test(expected = IOException.class)
+	public void refusesCorruptRecords() throws IOException {
+		byte[] stream = write(new RoundDelta(new Signal[] { new Move(1, new MapLocation(1, 1)) }));
+		byte[] corrupt = Arrays.copyOf(stream, stream.length + 1);
+		corrupt[stream.length] = 99;
+		read(corrupt);
+	}
+}
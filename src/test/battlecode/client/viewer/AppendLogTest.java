@@ -0,0 +1,77 @@
+package battlecode.client.viewer;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class AppendLogTest {
+
+	@Test
+	public void keepsElementsInOrderAcrossChunks() {
+		AppendLog<Integer> log = new AppendLog<Integer>();
+		// enough to outgrow the initial chunk directory
+		int n = 40000;
+		for (int i = 0; i < n; i++) {
+			log.add(i);
+		}
+		assertEquals(n, log.size());
+		for (int i = 0; i < n; i++) {
+			assertEquals(Integer.valueOf(i), log.get(i));
+		}
+	}
+
+	@Test
+	public void returnsNullOutsideThePublishedRange() {
+		AppendLog<String> log = new AppendLog<String>();
+		assertNull(log.get(0));
+		log.add("a");
+		assertEquals("a", log.get(0));
+		assertNull(log.get(1));
+		assertNull(log.get(-1));
+	}
+
+	@Test
+	public void startsOverWhenCleared() {
+		AppendLog<String> log = new AppendLog<String>();
+		log.add("a");
+		log.add("b");
+		log.clear();
+		assertEquals(0, log.size());
+		assertNull(log.get(0));
+		log.add("c");
+		assertEquals("c", log.get(0));
+	}
+
+	@Test
+	public void readersSeeEveryPublishedElement() throws Exception {
+		final AppendLog<Integer> log = new AppendLog<Integer>();
+		final int n = 200000;
+		final Throwable[] failure = new Throwable[1];
+		Thread reader = new Thread() {
+			public void run() {
+				try {
+					int seen = 0;
+					while (seen < n) {
+						int size = log.size();
+						for (int i = seen; i < size; i++) {
+							assertEquals(Integer.valueOf(i), log.get(i));
+						}
+						seen = size;
+					}
+				}
+				catch (Throwable e) {
+					failure[0] = e;
+				}
+			}
+		};
+		reader.start();
+		for (int i = 0; i < n; i++) {
+			log.add(i);
+		}
+		reader.join(10000);
+		assertFalse(reader.isAlive());
+		if (failure[0] != null) {
+			throw new AssertionError(failure[0]);
+		}
+	}
+}
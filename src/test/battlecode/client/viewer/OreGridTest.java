@@ -0,0 +1,87 @@
+package battlecode.client.viewer;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class OreGridTest {
+
+	@Test
+	public void startsEmpty() {
+		OreGrid grid = new OreGrid(40, 23);
+		for (int y = 0; y < grid.height; y++) {
+			for (int x = 0; x < grid.width; x++) {
+				assertEquals(0, grid.get(x, y), 0);
+			}
+		}
+		assertEquals(0, grid.getUnsharedBytes());
+	}
+
+	@Test
+	public void keepsEveryCellApart() {
+		// not a whole number of tiles either way
+		OreGrid grid = new OreGrid(37, 21);
+		for (int y = 0; y < grid.height; y++) {
+			for (int x = 0; x < grid.width; x++) {
+				grid.set(x, y, x * 100 + y + 0.5);
+			}
+		}
+		for (int y = 0; y < grid.height; y++) {
+			for (int x = 0; x < grid.width; x++) {
+				assertEquals(x * 100 + y + 0.5, grid.get(x, y), 0);
+			}
+		}
+	}
+
+	@Test
+	public void ignoresCellsOffTheMap() {
+		OreGrid grid = new OreGrid(20, 20);
+		grid.set(-1, 5, 3);
+		grid.set(5, 20, 3);
+		grid.set(20, 0, 3);
+		assertEquals(0, grid.getUnsharedBytes());
+		assertEquals(0, grid.get(-1, 5), 0);
+		assertEquals(0, grid.get(5, 20), 0);
+		assertEquals(0, grid.get(1000, 1000), 0);
+	}
+
+	@Test
+	public void copiesAreIndependent() {
+		OreGrid source = new OreGrid(64, 64);
+		source.set(3, 3, 10);
+		source.set(40, 40, 20);
+		OreGrid copy = new OreGrid(source);
+		assertEquals(10, copy.get(3, 3), 0);
+
+		copy.set(3, 3, 11);
+		source.set(40, 40, 21);
+		source.set(50, 2, 5);
+		assertEquals(10, source.get(3, 3), 0);
+		assertEquals(11, copy.get(3, 3), 0);
+		assertEquals(21, source.get(40, 40), 0);
+		assertEquals(20, copy.get(40, 40), 0);
+		assertEquals(0, copy.get(50, 2), 0);
+	}
+
+	@Test
+	public void copiesShareTilesUntilWritten() {
+		OreGrid source = new OreGrid(64, 64);
+		source.set(0, 0, 1);
+		source.set(20, 0, 1);
+		long written = source.getUnsharedBytes();
+		assertTrue(written > 0);
+		assertEquals(source.getTotalBytes(), new OreGrid(64, 64).getTotalBytes() + written);
+
+		OreGrid copy = new OreGrid(source);
+		assertEquals(0, source.getUnsharedBytes());
+		assertEquals(0, copy.getUnsharedBytes());
+		assertEquals(source.getTotalBytes(), copy.getTotalBytes());
+
+		// writing one cell unshares only its tile
+		copy.set(1, 1, 2);
+		assertEquals(written / 2, copy.getUnsharedBytes());
+		copy.set(2, 2, 2);
+		assertEquals(written / 2, copy.getUnsharedBytes());
+		assertEquals(0, source.getUnsharedBytes());
+	}
+}
@@ -0,0 +1,96 @@
+package battlecode.client.viewer;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import battlecode.common.MapLocation;
+import battlecode.common.RobotType;
+import battlecode.common.Team;
+
+public class RobotGridTest {
+
+	// map coordinates don't start at zero
+	private final MapLocation origin = new MapLocation(13000, 4000);
+
+	private MapLocation at(int x, int y) {
+		return new MapLocation(origin.x + x, origin.y + y);
+	}
+
+	private void assertCell(RobotGrid grid, int x, int y, int... ids) {
+		assertEquals(ids.length, grid.getCount(origin.x + x, origin.y + y));
+		for (int i = 0; i < ids.length; i++) {
+			assertEquals(ids[i], grid.getID(origin.x + x, origin.y + y, i));
+		}
+	}
+
+	@Test
+	public void placesRobotsOnTheirCells() {
+		RobotGrid grid = new RobotGrid(origin, 10, 8);
+		grid.add(1, at(2, 3), Team.A, RobotType.SOLDIER);
+		grid.add(2, at(9, 7), Team.B, RobotType.SOLDIER);
+		assertCell(grid, 2, 3, 1);
+		assertCell(grid, 9, 7, 2);
+		assertCell(grid, 3, 2);
+	}
+
+	@Test
+	public void keepsArrivalOrderOnACell() {
+		RobotGrid grid = new RobotGrid(origin, 10, 8);
+		// more robots than a cell first has room for
+		for (int id = 1; id <= 5; id++) {
+			grid.add(id, at(4, 4), Team.A, RobotType.DRONE);
+		}
+		assertCell(grid, 4, 4, 1, 2, 3, 4, 5);
+		grid.move(3, at(4, 4), at(5, 4));
+		grid.remove(1, at(4, 4), Team.A, RobotType.DRONE);
+		assertCell(grid, 4, 4, 2, 4, 5);
+		assertCell(grid, 5, 4, 3);
+		grid.move(3, at(5, 4), at(4, 4));
+		assertCell(grid, 4, 4, 2, 4, 5, 3);
+		assertCell(grid, 5, 4);
+	}
+
+	@Test
+	public void movingInPlaceChangesNothing() {
+		RobotGrid grid = new RobotGrid(origin, 10, 8);
+		grid.add(1, at(1, 1), Team.A, RobotType.BEAVER);
+		grid.add(2, at(1, 1), Team.A, RobotType.BEAVER);
+		grid.move(1, at(1, 1), at(1, 1));
+		assertCell(grid, 1, 1, 1, 2);
+	}
+
+	@Test
+	public void countsButDoesNotPlaceRobotsOffTheMap() {
+		RobotGrid grid = new RobotGrid(origin, 10, 8);
+		grid.add(1, at(-1, 0), Team.A, RobotType.TANK);
+		grid.add(2, null, Team.A, RobotType.TANK);
+		assertEquals(2, grid.getCounts(Team.A)[RobotType.TANK.ordinal()]);
+		assertEquals(0, grid.getCount(origin.x - 1, origin.y));
+		// a robot carried onto the map is placed from then on
+		grid.move(2, null, at(0, 0));
+		assertCell(grid, 0, 0, 2);
+		grid.move(2, at(0, 0), at(10, 0));
+		assertCell(grid, 0, 0);
+		grid.remove(1, at(-1, 0), Team.A, RobotType.TANK);
+		assertEquals(1, grid.getCounts(Team.A)[RobotType.TANK.ordinal()]);
+	}
+
+	@Test
+	public void countsEachTeamsTypes() {
+		RobotGrid grid = new RobotGrid(origin, 10, 8);
+		grid.add(1, at(0, 0), Team.A, RobotType.HQ);
+		grid.add(2, at(1, 0), Team.A, RobotType.MINER);
+		grid.add(3, at(2, 0), Team.A, RobotType.MINER);
+		grid.add(4, at(3, 0), Team.B, RobotType.MINER);
+		grid.remove(3, at(2, 0), Team.A, RobotType.MINER);
+		int[] a = grid.getCounts(Team.A);
+		assertEquals(1, a[RobotType.HQ.ordinal()]);
+		assertEquals(1, a[RobotType.MINER.ordinal()]);
+		assertEquals(1, grid.getCounts(Team.B)[RobotType.MINER.ordinal()]);
+		assertEquals(0, grid.getCounts(Team.NEUTRAL)[RobotType.MINER.ordinal()]);
+		// the counts handed out are copies
+		a[RobotType.HQ.ordinal()] = 7;
+		assertEquals(1, grid.getCounts(Team.A)[RobotType.HQ.ordinal()]);
+	}
+}
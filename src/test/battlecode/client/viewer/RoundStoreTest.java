@@ -0,0 +1,128 @@
+package battlecode.client.viewer;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import battlecode.common.MapLocation;
+import battlecode.engine.signal.Signal;
+import battlecode.serial.RoundDelta;
+
+public class RoundStoreTest {
+
+	static class Step extends Signal {
+		int robot;
+		MapLocation to;
+		int[] payload;
+
+		Step(int robot, MapLocation to, int payloadLength) {
+			this.robot = robot;
+			this.to = to;
+			this.payload = new int[payloadLength];
+			for (int i = 0; i < payloadLength; i++) {
+				payload[i] = robot * 31 + i;
+			}
+		}
+	}
+
+	static RoundDelta round(int n, int payloadLength) {
+		Signal[] signals = new Signal[n % 5];
+		for (int i = 0; i < signals.length; i++) {
+			signals[i] = new Step(n * 10 + i, new MapLocation(n, -i), payloadLength);
+		}
+		return new RoundDelta(signals);
+	}
+
+	static void assertRound(int n, int payloadLength, RoundDelta delta) {
+		Signal[] signals = delta.getSignals();
+		assertEquals(n % 5, signals.length);
+		for (int i = 0; i < signals.length; i++) {
+			Step step = (Step) signals[i];
+			assertEquals(n * 10 + i, step.robot);
+			assertEquals(new MapLocation(n, -i), step.to);
+			assertEquals(payloadLength, step.payload.length);
+			for (int j = 0; j < payloadLength; j++) {
+				assertEquals(step.robot * 31 + j, step.payload[j]);
+			}
+		}
+	}
+
+	@Test
+	public void decodesEveryRound() {
+		RoundStore store = new RoundStore();
+		for (int n = 0; n < 3000; n++) {
+			store.add(round(n, 3));
+			assertEquals(n + 1, store.size());
+		}
+		for (int n = 2999; n >= 0; n -= 7) {
+			assertRound(n, 3, store.get(n));
+		}
+	}
+
+	@Test
+	public void forgetsRoundsWhenCleared() {
+		RoundStore store = new RoundStore();
+		store.add(round(1, 3));
+		store.add(round(2, 3));
+		store.clear();
+		assertEquals(0, store.size());
+		store.add(round(4, 3));
+		assertEquals(1, store.size());
+		assertRound(4, 3, store.get(0));
+	}
+
+	@Test
+	public void returnsNullForUnpublishedRounds() {
+		RoundStore store = new RoundStore();
+		assertNull(store.get(0));
+		store.add(round(1, 3));
+		assertNull(store.get(1));
+		assertNull(store.get(-1));
+	}
+
+	@Test
+	public void cachesRecentlyDecodedRounds() {
+		RoundStore store = new RoundStore(RoundStore.NEVER_SPILL, 8);
+		for (int n = 0; n < 100; n++) {
+			store.add(round(n, 3));
+		}
+		RoundDelta first = store.get(42);
+		assertSame(first, store.get(42));
+		// a round pushed out of its set is decoded afresh
+		for (int n = 0; n < 100; n++) {
+			store.get(n);
+		}
+		RoundDelta again = store.get(42);
+		assertNotSame(first, again);
+		assertRound(42, 3, again);
+	}
+
+	@Test
+	public void spilledRoundsStayReadable() throws Exception {
+		// spill every full block; big rounds fill a block every few dozen
+		RoundStore store = new RoundStore(0, 4);
+		int n = 400;
+		for (int i = 0; i < n; i++) {
+			store.add(round(i, 2000));
+		}
+		Field blocks = RoundStore.class.getDeclaredField("blocks");
+		blocks.setAccessible(true);
+		ByteBuffer[] dir = (ByteBuffer[]) blocks.get(store);
+		assertTrue("expected the first block to be spilled", dir[0].isDirect());
+		for (int i = 0; i < n; i += 3) {
+			assertRound(i, 2000, store.get(i));
+		}
+		store.close();
+		// closing deletes the file but keeps mapped rounds readable, and
+		// later blocks stay on the heap
+		for (int i = n; i < n + 50; i++) {
+			store.add(round(i, 2000));
+		}
+		for (int i = 1; i < n + 50; i += 3) {
+			assertRound(i, 2000, store.get(i));
+		}
+	}
+}